@@ -0,0 +1,76 @@
+package it.jaiki.benchmark;
+
+import io.javalin.json.JavalinJackson;
+import it.jaiki.Application;
+import it.jaiki.cache.ProductResponseCache;
+import it.jaiki.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of product lists through the application's {@link JavalinJackson} mapper, both the
+ * buffered {@code ctx.json} path and the {@code ctx.writeJsonStream} path, against reusing the bytes
+ * held by {@link ProductResponseCache}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductSerializationBenchmark {
+
+    @Param({"1", "50", "1000"})
+    public int size;
+
+    private JavalinJackson mapper;
+    private List<Product> products;
+    private Type listType;
+    private ProductResponseCache responses;
+
+    @Setup
+    public void setUp() {
+        mapper = Application.createJsonMapper();
+        products = new ArrayList<>(size);
+        OffsetDateTime timestamp = OffsetDateTime.of(2024, 5, 1, 12, 30, 15, 123_456_000, ZoneOffset.UTC);
+        for (int i = 1; i <= size; i++) {
+            products.add(new Product(i, "Product number " + i, new BigDecimal(i + ".99"), timestamp, timestamp.plusSeconds(i), 1L));
+        }
+        listType = products.getClass();
+        responses = new ProductResponseCache(mapper, 10_000, 100, Duration.ofHours(1));
+    }
+
+    @Benchmark
+    public String toJsonString() {
+        return mapper.toJsonString(products, listType);
+    }
+
+    @Benchmark
+    public byte[] cachedCollection() {
+        return responses.collection(1L, () -> products);
+    }
+
+    @Benchmark
+    public void writeToOutputStream() {
+        mapper.writeToOutputStream(products.stream(), OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,62 @@
+package it.jaiki.repository;
+
+import it.jaiki.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ProductRepository#mapRow} over a synthetic, in-memory {@link ResultSet}.
+ *
+ * <p>The result set is a dynamic proxy returning fixed column values, so absolute numbers include
+ * a small reflective dispatch cost per column; the benchmark is meant for relative comparisons.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductRowMappingBenchmark {
+
+    private ProductRepository repository;
+    private ResultSet resultSet;
+
+    @Setup
+    public void setUp() {
+        repository = new ProductRepository(null);
+        OffsetDateTime timestamp = OffsetDateTime.of(2024, 5, 1, 12, 30, 15, 0, ZoneOffset.UTC);
+        BigDecimal price = new BigDecimal("19.99");
+        resultSet = (ResultSet) Proxy.newProxyInstance(
+            ResultSet.class.getClassLoader(),
+            new Class<?>[]{ResultSet.class},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "getLong" -> "version".equals(args[0]) ? 3L : 42L;
+                case "getString" -> "Synthetic product";
+                case "getBigDecimal" -> price;
+                case "getObject" -> timestamp;
+                default -> throw new UnsupportedOperationException(method.getName());
+            }
+        );
+    }
+
+    @Benchmark
+    public Product mapRow() throws SQLException {
+        return repository.mapRow(resultSet);
+    }
+}
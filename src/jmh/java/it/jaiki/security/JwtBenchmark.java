@@ -0,0 +1,64 @@
+package it.jaiki.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token issuing and verification as done by login and the {@code beforeMatched} security hook.
+ *
+ * <p>{@code parseCached} repeats one token (the steady state for a Bearer client);
+ * {@code parseUncached} cycles through more distinct tokens than the verified-token cache holds,
+ * so every call pays for full HMAC verification and claim decoding.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtBenchmark {
+
+    private static final int DISTINCT_TOKENS = 32_768;
+
+    private AuthenticatedUser user;
+    private String token;
+    private String[] tokens;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        user = new AuthenticatedUser(42L, "benchmark-user", Role.USER);
+        token = JwtUtil.generateToken(user);
+        tokens = new String[DISTINCT_TOKENS];
+        for (int i = 0; i < DISTINCT_TOKENS; i++) {
+            tokens[i] = JwtUtil.generateToken(new AuthenticatedUser(i, "user-" + i, Role.USER));
+        }
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return JwtUtil.generateToken(user);
+    }
+
+    @Benchmark
+    public AuthenticatedUser parseCached() {
+        return JwtUtil.parseToken(token);
+    }
+
+    @Benchmark
+    public AuthenticatedUser parseUncached() {
+        String next = tokens[cursor];
+        cursor = (cursor + 1) % DISTINCT_TOKENS;
+        return JwtUtil.parseToken(next);
+    }
+}
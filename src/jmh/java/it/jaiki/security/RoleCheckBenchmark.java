@@ -0,0 +1,50 @@
+package it.jaiki.security;
+
+import io.javalin.security.RouteRole;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The role check run by the {@code beforeMatched} hook for every protected request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoleCheckBenchmark {
+
+    private Set<RouteRole> userOrAdmin;
+    private Set<RouteRole> adminOnly;
+    private AuthenticatedUser user;
+
+    @Setup
+    public void setUp() {
+        // Javalin hands the hook the roles as an immutable set, as built here
+        userOrAdmin = Set.of(Role.USER, Role.ADMIN);
+        adminOnly = Set.of(Role.ADMIN);
+        user = new AuthenticatedUser(1L, "benchmark-user", Role.USER);
+    }
+
+    @Benchmark
+    public boolean permitted() {
+        return SecurityUtils.hasPermittedRole(userOrAdmin, user);
+    }
+
+    @Benchmark
+    public boolean forbidden() {
+        return SecurityUtils.hasPermittedRole(adminOnly, user);
+    }
+}
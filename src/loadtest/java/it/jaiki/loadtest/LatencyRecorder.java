@@ -0,0 +1,103 @@
+package it.jaiki.loadtest;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects raw latencies and status codes for one operation on one worker thread.
+ *
+ * <p>Each worker owns its recorders, so recording needs no synchronization; they are merged once
+ * the run is over. Keeping every sample makes the high percentiles exact rather than bucketed.
+ */
+final class LatencyRecorder {
+
+    /** Status bucket for requests that failed before a response arrived. */
+    static final String TRANSPORT_ERROR = "error";
+
+    private long[] samples = new long[1024];
+    private int count;
+    private long errors;
+    private final Map<String, Long> statuses = new TreeMap<>();
+
+    void record(long latencyNanos, int status) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = latencyNanos;
+        if (status >= 400) {
+            errors++;
+        }
+        statuses.merge(Integer.toString(status), 1L, Long::sum);
+    }
+
+    void recordFailure(long latencyNanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = latencyNanos;
+        errors++;
+        statuses.merge(TRANSPORT_ERROR, 1L, Long::sum);
+    }
+
+    void mergeFrom(LatencyRecorder other) {
+        if (count + other.count > samples.length) {
+            samples = Arrays.copyOf(samples, count + other.count);
+        }
+        System.arraycopy(other.samples, 0, samples, count, other.count);
+        count += other.count;
+        errors += other.errors;
+        other.statuses.forEach((status, hits) -> statuses.merge(status, hits, Long::sum));
+    }
+
+    Summary summarize(double seconds) {
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long sample : sorted) {
+            total += sample;
+        }
+        return new Summary(
+            count,
+            errors,
+            count == 0 ? 0.0 : (double) errors / count,
+            seconds <= 0 ? 0.0 : count / seconds,
+            new Latency(
+                millis(percentile(sorted, 0.50)),
+                millis(percentile(sorted, 0.99)),
+                millis(percentile(sorted, 0.999)),
+                millis(count == 0 ? 0 : sorted[count - 1]),
+                count == 0 ? 0.0 : millis(total) / count
+            ),
+            new TreeMap<>(statuses)
+        );
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    /**
+     * Aggregated result for one operation, or for all of them.
+     */
+    record Summary(
+        long requests,
+        long errors,
+        double errorRate,
+        double throughputPerSecond,
+        Latency latencyMillis,
+        Map<String, Long> statusCodes
+    ) {
+    }
+
+    record Latency(double p50, double p99, double p999, double max, double mean) {
+    }
+}
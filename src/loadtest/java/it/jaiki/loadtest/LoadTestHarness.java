@@ -0,0 +1,286 @@
+package it.jaiki.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.javalin.Javalin;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import it.jaiki.Application;
+import it.jaiki.config.AppConfig;
+import it.jaiki.loadtest.LoadTestOptions.Operation;
+import it.jaiki.model.Product;
+import it.jaiki.repository.ProductRepository;
+import it.jaiki.repository.UserRepository;
+import it.jaiki.security.Role;
+import org.mindrot.jbcrypt.BCrypt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * End-to-end load test: boots {@link Application} against an embedded PostgreSQL, seeds products
+ * and users, drives a weighted mix of reads, writes and logins from closed-loop workers, and writes
+ * latency percentiles, throughput and error rates as JSON.
+ *
+ * <pre>
+ * mvn -Ploadtest verify -Dloadtest.args="products=50000 concurrency=64 duration=60 mix=read=80,list=10,write=5,login=5"
+ * </pre>
+ * Samples taken during {@code warmup} seconds are discarded.
+ */
+public final class LoadTestHarness {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadTestHarness.class);
+    private static final String ADMIN_USERNAME = "loadtest-admin";
+    private static final int SEED_CHUNK_SIZE = 5_000;
+    private static final int LIST_PAGE_SIZE = 50;
+
+    private final LoadTestOptions options;
+    private final ObjectMapper mapper = new ObjectMapper()
+        .findAndRegisterModules()
+        .enable(SerializationFeature.INDENT_OUTPUT)
+        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private HttpClient client;
+    private String baseUrl;
+    private String adminToken;
+    private long[] productIds;
+    private List<String> usernames;
+
+    private LoadTestHarness(LoadTestOptions options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        new LoadTestHarness(options).run();
+    }
+
+    private void run() throws Exception {
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.builder().start()) {
+            AppConfig.load();
+            AppConfig.set("DB_URL", postgres.getJdbcUrl("postgres", "postgres"));
+            AppConfig.set("DB_USER", "postgres");
+            AppConfig.set("DEFAULT_ADMIN_USERNAME", ADMIN_USERNAME);
+            AppConfig.set("DEFAULT_ADMIN_PASSWORD", LoadTestOptions.USER_PASSWORD);
+            // every virtual user connects from the same address
+            AppConfig.set("RATE_LIMIT_ENABLED", "false");
+            options.appConfig().forEach(AppConfig::set);
+
+            Javalin app = Application.start(0);
+            try {
+                seed(postgres.getPostgresDatabase());
+                baseUrl = "http://localhost:" + app.port();
+                client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .build();
+                adminToken = login(ADMIN_USERNAME);
+                writeReport(drive());
+            } finally {
+                app.stop();
+            }
+        }
+    }
+
+    private void seed(DataSource dataSource) {
+        long startedAt = System.nanoTime();
+        ProductRepository productRepository = new ProductRepository(dataSource);
+        productIds = new long[options.products()];
+        int seeded = 0;
+        while (seeded < options.products()) {
+            int chunk = Math.min(SEED_CHUNK_SIZE, options.products() - seeded);
+            List<ProductRepository.NewProduct> rows = new ArrayList<>(chunk);
+            for (int i = 0; i < chunk; i++) {
+                int n = seeded + i + 1;
+                rows.add(new ProductRepository.NewProduct("Load test product " + n, BigDecimal.valueOf(n % 10_000, 2)));
+            }
+            for (Product product : productRepository.insertAll(rows)) {
+                productIds[seeded++] = product.getId();
+            }
+        }
+
+        // one hash at the production cost keeps seeding fast while logins still pay full BCrypt
+        UserRepository userRepository = new UserRepository(dataSource);
+        String passwordHash = BCrypt.hashpw(LoadTestOptions.USER_PASSWORD, BCrypt.gensalt(12));
+        usernames = new ArrayList<>(options.users());
+        for (int i = 1; i <= options.users(); i++) {
+            String username = "loaduser" + i;
+            userRepository.insert(username, passwordHash, Role.USER);
+            usernames.add(username);
+        }
+        LOGGER.info("Seeded {} products and {} users in {} ms", options.products(), options.users(),
+            (System.nanoTime() - startedAt) / 1_000_000);
+    }
+
+    private Map<String, Object> drive() throws InterruptedException {
+        Operation[] schedule = schedule(options.mix());
+        long now = System.nanoTime();
+        long measureFrom = now + options.warmup().toNanos();
+        long stopAt = measureFrom + options.duration().toNanos();
+
+        List<Map<Operation, LatencyRecorder>> perWorker = new ArrayList<>(options.concurrency());
+        List<Thread> workers = new ArrayList<>(options.concurrency());
+        for (int worker = 0; worker < options.concurrency(); worker++) {
+            Map<Operation, LatencyRecorder> recorders = newRecorders();
+            perWorker.add(recorders);
+            workers.add(Thread.ofPlatform().name("loadtest-worker-" + worker).start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (true) {
+                    long startedAt = System.nanoTime();
+                    if (startedAt - stopAt >= 0) {
+                        return;
+                    }
+                    Operation operation = schedule[random.nextInt(schedule.length)];
+                    int status = execute(operation, random);
+                    long latency = System.nanoTime() - startedAt;
+                    if (startedAt - measureFrom >= 0) {
+                        if (status < 0) {
+                            recorders.get(operation).recordFailure(latency);
+                        } else {
+                            recorders.get(operation).record(latency, status);
+                        }
+                    }
+                }
+            }));
+        }
+        LOGGER.info("Running {} workers: {} s warmup, {} s measured", options.concurrency(),
+            options.warmup().toSeconds(), options.duration().toSeconds());
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        double seconds = options.duration().toNanos() / 1_000_000_000.0;
+        Map<Operation, LatencyRecorder> merged = newRecorders();
+        LatencyRecorder total = new LatencyRecorder();
+        for (Map<Operation, LatencyRecorder> recorders : perWorker) {
+            recorders.forEach((operation, recorder) -> {
+                merged.get(operation).mergeFrom(recorder);
+                total.mergeFrom(recorder);
+            });
+        }
+
+        Map<String, Object> operations = new LinkedHashMap<>();
+        merged.forEach((operation, recorder) -> {
+            if (options.mix().get(operation) > 0) {
+                operations.put(operation.name().toLowerCase(), recorder.summarize(seconds));
+            }
+        });
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("finishedAt", OffsetDateTime.now());
+        report.put("config", configSummary());
+        report.put("total", total.summarize(seconds));
+        report.put("operations", operations);
+        return report;
+    }
+
+    /**
+     * Returns the status code, or {@code -1} when the request failed before a response arrived.
+     */
+    private int execute(Operation operation, ThreadLocalRandom random) {
+        HttpRequest request = switch (operation) {
+            case READ -> get("/api/products/" + randomProductId(random));
+            case LIST -> get("/api/products?limit=" + LIST_PAGE_SIZE);
+            case WRITE -> HttpRequest.newBuilder(URI.create(baseUrl + "/api/products/" + randomProductId(random)))
+                .header("Authorization", "Bearer " + adminToken)
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"price\":" + BigDecimal.valueOf(random.nextInt(1, 100_000), 2) + "}"))
+                .build();
+            case LOGIN -> loginRequest(usernames.get(random.nextInt(usernames.size())));
+        };
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException exception) {
+            return -1;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    private String login(String username) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(loginRequest(username), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Login as %s failed with %d: %s".formatted(username, response.statusCode(), response.body()));
+        }
+        return mapper.readTree(response.body()).get("token").asText();
+    }
+
+    private HttpRequest loginRequest(String username) {
+        String body = mapper.createObjectNode()
+            .put("username", username)
+            .put("password", LoadTestOptions.USER_PASSWORD)
+            .toString();
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/api/auth/login"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+    }
+
+    private long randomProductId(ThreadLocalRandom random) {
+        return productIds[random.nextInt(productIds.length)];
+    }
+
+    private Map<String, Object> configSummary() {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("products", options.products());
+        config.put("users", options.users());
+        config.put("concurrency", options.concurrency());
+        config.put("warmupSeconds", options.warmup().toSeconds());
+        config.put("durationSeconds", options.duration().toSeconds());
+        config.put("mix", options.mix());
+        config.put("appConfig", options.appConfig());
+        config.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        config.put("javaVersion", Runtime.version().toString());
+        return config;
+    }
+
+    private void writeReport(Map<String, Object> report) throws IOException {
+        if (options.output().getParent() != null) {
+            Files.createDirectories(options.output().getParent());
+        }
+        mapper.writeValue(options.output().toFile(), report);
+        LOGGER.info("Load test report written to {}", options.output().toAbsolutePath());
+        LOGGER.info("{}", mapper.writeValueAsString(report.get("total")));
+    }
+
+    /**
+     * Expands the weights into a lookup table so picking an operation is a single random index.
+     */
+    private static Operation[] schedule(Map<Operation, Integer> mix) {
+        List<Operation> slots = new ArrayList<>();
+        mix.forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                slots.add(operation);
+            }
+        });
+        return slots.toArray(Operation[]::new);
+    }
+
+    private static Map<Operation, LatencyRecorder> newRecorders() {
+        Map<Operation, LatencyRecorder> recorders = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new LatencyRecorder());
+        }
+        return recorders;
+    }
+}
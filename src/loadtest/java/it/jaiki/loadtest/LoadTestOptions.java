@@ -0,0 +1,107 @@
+package it.jaiki.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Load-test settings parsed from {@code name=value} arguments.
+ *
+ * <p>Arguments in {@code UPPER_SNAKE_CASE} are not harness options; they are passed through to the
+ * application configuration, e.g. {@code USE_VIRTUAL_THREADS=true} or {@code DB_CONCURRENCY_LIMIT=20}.
+ */
+record LoadTestOptions(
+    int products,
+    int users,
+    int concurrency,
+    Duration warmup,
+    Duration duration,
+    Map<Operation, Integer> mix,
+    Path output,
+    Map<String, String> appConfig
+) {
+
+    static final String USER_PASSWORD = "load-test-password";
+
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        Map<String, String> appConfig = new LinkedHashMap<>();
+        for (String arg : args) {
+            int idx = arg.indexOf('=');
+            if (idx <= 0) {
+                throw new IllegalArgumentException("Expected name=value but got '" + arg + "'");
+            }
+            String name = arg.substring(0, idx).trim();
+            String value = arg.substring(idx + 1).trim();
+            if (name.equals(name.toUpperCase(Locale.ROOT))) {
+                appConfig.put(name, value);
+            } else {
+                options.put(name, value);
+            }
+        }
+
+        return new LoadTestOptions(
+            positive(options, "products", 10_000),
+            positive(options, "users", 100),
+            positive(options, "concurrency", 32),
+            Duration.ofSeconds(Integer.parseInt(options.getOrDefault("warmup", "10"))),
+            Duration.ofSeconds(positive(options, "duration", 30)),
+            parseMix(options.getOrDefault("mix", "read=70,list=10,write=15,login=5")),
+            Path.of(options.getOrDefault("output", "target/loadtest-result.json")),
+            appConfig
+        );
+    }
+
+    /**
+     * Parses weights such as {@code read=70,list=10,write=15,login=5}. Omitted operations get weight 0.
+     */
+    private static Map<Operation, Integer> parseMix(String value) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            mix.put(operation, 0);
+        }
+        int total = 0;
+        for (String part : value.split("[,;]")) {
+            String[] pair = part.split("[=:]");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Invalid mix entry '" + part + "'");
+            }
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Mix weights must not be negative");
+            }
+            mix.put(Operation.valueOf(pair[0].trim().toUpperCase(Locale.ROOT)), weight);
+            total += weight;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("Mix must contain at least one positive weight");
+        }
+        return mix;
+    }
+
+    private static int positive(Map<String, String> options, String name, int fallback) {
+        String value = options.get(name);
+        int parsed = value == null ? fallback : Integer.parseInt(value);
+        if (parsed < 1) {
+            throw new IllegalArgumentException(name + " must be positive");
+        }
+        return parsed;
+    }
+
+    /**
+     * The request types driven by the harness.
+     */
+    enum Operation {
+        /** {@code GET /api/products/{id}} for a random seeded product. */
+        READ,
+        /** {@code GET /api/products?limit=50} */
+        LIST,
+        /** {@code PUT /api/products/{id}} with a new price, as the admin. */
+        WRITE,
+        /** {@code POST /api/auth/login} as a random seeded user. */
+        LOGIN
+    }
+}
@@ -2,24 +2,59 @@ package it.jaiki;
 
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.zaxxer.hikari.HikariDataSource;
+import it.jaiki.cache.ProductResponseCache;
+import it.jaiki.config.AppConfig;
+import it.jaiki.config.CacheConfig;
 import it.jaiki.config.DatabaseConfig;
+import it.jaiki.config.MetricsConfig;
 import it.jaiki.config.OpenApiConfig;
+import it.jaiki.config.TrafficConfig;
 import it.jaiki.controller.AuthController;
+import it.jaiki.controller.DatabaseAdminController;
 import it.jaiki.controller.ProductController;
+import it.jaiki.controller.ProductImportController;
+import it.jaiki.controller.ResponseCompression;
+import it.jaiki.db.ConcurrencyLimitedDataSource;
+import it.jaiki.db.PoolSizingAdvisor;
+import it.jaiki.db.ReplicaFallbackDataSource;
+import it.jaiki.db.TracingDataSource;
+import it.jaiki.metrics.HttpMetrics;
+import it.jaiki.metrics.MethodTimers;
 import it.jaiki.repository.ProductRepository;
 import it.jaiki.repository.UserRepository;
 import it.jaiki.security.AuthenticatedUser;
+import it.jaiki.security.LoadShedder;
+import it.jaiki.security.RateLimiter;
 import it.jaiki.security.Role;
 import it.jaiki.security.SecurityUtils;
 import it.jaiki.security.JwtUtil;
 import it.jaiki.service.AuthService;
+import it.jaiki.service.HashingExecutor;
+import it.jaiki.service.ProductImportService;
+import it.jaiki.service.ProductIndex;
 import it.jaiki.service.ProductService;
+import it.jaiki.service.ProductWriteQueue;
 import io.javalin.Javalin;
+import io.javalin.compression.Brotli;
+import io.javalin.compression.CompressionStrategy;
+import io.javalin.compression.Gzip;
 import io.javalin.config.JavalinConfig;
 import io.javalin.json.JavalinJackson;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import io.javalin.http.Context;
 import io.javalin.http.ForbiddenResponse;
+import io.javalin.http.Header;
+import io.javalin.http.HttpResponseException;
+import io.javalin.http.HttpStatus;
 import io.javalin.http.UnauthorizedResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,30 +64,139 @@ import org.slf4j.LoggerFactory;
 public final class Application {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Application.class);
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String METRICS_PATH = "/metrics";
+    /**
+     * Routes whose latency says nothing about queueing for the shared resources: password hashing
+     * waits on its own executor, imports and exports run as long as the data they move.
+     */
+    private static final Set<String> UNMEASURED_ROUTES = Set.of(
+        "/api/auth/login",
+        "/api/auth/register",
+        "/api/admin/products/import",
+        "/api/admin/products/export"
+    );
 
     private Application() {
     }
 
     public static void main(String[] args) {
         // Load local .env (if present) and app config early
-        it.jaiki.config.AppConfig.load();
+        AppConfig.load();
 
+        Javalin app = start(resolvePort());
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            LOGGER.info("Shutting down application");
+            app.stop();
+        }));
+    }
+
+    /**
+     * Wires the application from {@link AppConfig}, runs the migrations and starts serving on
+     * {@code port} ({@code 0} picks a free port). Stopping the returned server releases the pools.
+     */
+    public static Javalin start(int port) {
+        PrometheusMeterRegistry meterRegistry = MetricsConfig.createRegistry();
         HikariDataSource dataSource = DatabaseConfig.createDataSource();
         DatabaseConfig.runMigrations(dataSource);
+        ConcurrencyLimitedDataSource limitedDataSource = DatabaseConfig.limitConcurrency(dataSource);
+        MetricsConfig.bindPool(meterRegistry, dataSource);
+        MetricsConfig.bindAdmissionLimit(meterRegistry, limitedDataSource);
+        Optional<PoolSizingAdvisor> poolSizingAdvisor = DatabaseConfig.startPoolSizingAdvisor(dataSource, limitedDataSource);
+        TracingDataSource tracedDataSource = DatabaseConfig.trace(limitedDataSource);
+        MetricsConfig.bindStatementTrace(meterRegistry, tracedDataSource);
 
-        ProductRepository productRepository = new ProductRepository(dataSource);
-        ProductService productService = new ProductService(productRepository);
-        ProductController productController = new ProductController(productService);
+        // reads go to the replica when DB_READ_URL is set, falling back to the primary while it is down
+        Optional<HikariDataSource> replicaDataSource = DatabaseConfig.createReadDataSource();
+        DataSource readDataSource = tracedDataSource;
+        if (replicaDataSource.isPresent()) {
+            MetricsConfig.bindPool(meterRegistry, replicaDataSource.get());
+            ReplicaFallbackDataSource routedReads = DatabaseConfig.withPrimaryFallback(replicaDataSource.get(), limitedDataSource);
+            MetricsConfig.bindReplicaFallback(meterRegistry, routedReads);
+            readDataSource = tracedDataSource.alsoTrace(routedReads);
+        }
 
-        UserRepository userRepository = new UserRepository(dataSource);
-        AuthService authService = new AuthService(userRepository);
+        ProductRepository productRepository = new ProductRepository(
+            tracedDataSource,
+            readDataSource,
+            AppConfig.getInt("PRODUCT_BATCH_CHUNK_SIZE", ProductRepository.DEFAULT_BATCH_CHUNK_SIZE),
+            new MethodTimers(meterRegistry, "products")
+        );
+        // optional in-memory copy of the catalog, refreshed from products_changed notifications
+        Optional<ProductIndex> productIndex = CacheConfig.startProductIndex(productRepository);
+        // writers read their own products from the primary while the replica or the index catches up
+        Duration readYourWritesWindow = replicaDataSource.isPresent() || productIndex.isPresent()
+            ? Duration.ofMillis(AppConfig.getInt("DB_READ_YOUR_WRITES_MS", 5_000))
+            : Duration.ZERO;
+        JavalinJackson jsonMapper = createJsonMapper();
+        ProductResponseCache productResponses = CacheConfig.createProductResponseCache(jsonMapper);
+        // optional group commit for single-product updates
+        Optional<ProductWriteQueue> productWrites = startProductWriteQueue(productRepository);
+        ProductService productService = new ProductService(
+            productRepository,
+            CacheConfig.createProductCache(),
+            readYourWritesWindow,
+            productIndex.orElse(null),
+            productResponses,
+            productWrites.orElse(null)
+        );
+        Set<ResponseCompression.Encoding> encodings = ResponseCompression.availableEncodings();
+        ResponseCompression responseCompression = new ResponseCompression(
+            AppConfig.getInt("HTTP_COMPRESSION_MIN_BYTES", 1_500),
+            AppConfig.getInt("HTTP_PRECOMPRESSED_MAX_VARIANTS", 256),
+            Duration.ofSeconds(AppConfig.getInt("PRODUCT_CACHE_TTL_SECONDS", 60)),
+            AppConfig.getBoolean("HTTP_COMPRESSION_ENABLED", true) ? encodings : Set.of()
+        );
+        MetricsConfig.bindCache(meterRegistry, productService::cacheStats);
+        for (int index = 0; index < productResponses.stats().size(); index++) {
+            int cache = index;
+            MetricsConfig.bindCache(meterRegistry, () -> productResponses.stats().get(cache));
+        }
+        MetricsConfig.bindCache(meterRegistry, responseCompression::stats);
+        MetricsConfig.bindCache(meterRegistry, JwtUtil::cacheStats);
+        productWrites.ifPresent(queue -> MetricsConfig.bindProductWriteQueue(meterRegistry, queue));
+        ProductController productController = new ProductController(productService, productResponses, responseCompression);
+        ProductImportController productImportController = new ProductImportController(
+            new ProductImportService(productRepository, productService)
+        );
+
+        UserRepository userRepository = new UserRepository(tracedDataSource, readDataSource, new MethodTimers(meterRegistry, "users"));
+        HashingExecutor hashingExecutor = new HashingExecutor(
+            AppConfig.getInt("AUTH_HASH_THREADS", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+            AppConfig.getInt("AUTH_HASH_QUEUE_CAPACITY", 64)
+        );
+        MetricsConfig.bindHashingExecutor(meterRegistry, hashingExecutor);
+        AuthService authService = new AuthService(userRepository, hashingExecutor);
         seedDefaultAdmin(authService);
         AuthController authController = new AuthController(authService);
+        DatabaseAdminController databaseAdminController = new DatabaseAdminController(tracedDataSource);
 
-        Javalin app = Javalin.create(Application::configureJavalin);
-        registerSecurity(app);
+        HttpMetrics httpMetrics = new HttpMetrics(meterRegistry);
+        Optional<RateLimiter> rateLimiter = TrafficConfig.createRateLimiter();
+        rateLimiter.ifPresent(limiter -> MetricsConfig.bindRateLimiter(meterRegistry, limiter));
+        Optional<LoadShedder> loadShedder = TrafficConfig.createLoadShedder();
+        loadShedder.ifPresent(shedder -> MetricsConfig.bindLoadShedder(meterRegistry, shedder));
+        Javalin app = Javalin.create(config -> {
+            configureJavalin(config, jsonMapper, encodings);
+            config.requestLogger.http((ctx, executionTimeMs) -> {
+                loadShedder.ifPresent(shedder -> shedder.complete(ctx, executionTimeMs));
+                httpMetrics.record(ctx, executionTimeMs);
+            });
+            config.events.serverStopped(() -> {
+                hashingExecutor.close();
+                productWrites.ifPresent(ProductWriteQueue::close);
+                poolSizingAdvisor.ifPresent(PoolSizingAdvisor::close);
+                productIndex.ifPresent(ProductIndex::close);
+                replicaDataSource.ifPresent(HikariDataSource::close);
+                dataSource.close();
+            });
+        });
+        registerSecurity(app, rateLimiter.orElse(null), loadShedder.orElse(null), AppConfig.get("METRICS_SCRAPE_TOKEN", null));
         authController.registerRoutes(app);
         productController.registerRoutes(app);
+        productImportController.registerRoutes(app);
+        databaseAdminController.registerRoutes(app);
 
         // Health and readiness endpoints
         app.get("/health", ctx -> ctx.json(Map.of("status", "UP")));
@@ -63,31 +207,65 @@ public final class Application {
                 ctx.status(503).json(Map.of("status", "NOT_READY", "error", e.getMessage()));
             }
         });
+        // Prometheus scrape endpoint; it exposes traffic, cache, pool and queue internals, so only
+        // admins and holders of METRICS_SCRAPE_TOKEN may scrape it, see registerSecurity
+        app.get(METRICS_PATH, ctx -> ctx.contentType(PROMETHEUS_CONTENT_TYPE).result(meterRegistry.scrape()), Role.ADMIN);
 
-        int port = resolvePort();
         LOGGER.info("Starting server on port {}", port);
         app.start(port);
+        return app;
+    }
 
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            LOGGER.info("Shutting down application");
-            app.stop();
-            dataSource.close();
-        }));
+    private static void configureJavalin(JavalinConfig config, JavalinJackson jsonMapper, Set<ResponseCompression.Encoding> encodings) {
+        // Handlers block on JDBC; virtual threads make that cheap (DB access is bounded by DB_CONCURRENCY_LIMIT)
+        config.useVirtualThreads = AppConfig.getBoolean("USE_VIRTUAL_THREADS", false);
+
+        // dynamic responses are compressed per request at moderate levels; cacheable collections are
+        // served from pre-compressed variants by ResponseCompression (including zstd)
+        if (AppConfig.getBoolean("HTTP_COMPRESSION_ENABLED", true)) {
+            CompressionStrategy compression = new CompressionStrategy(
+                encodings.contains(ResponseCompression.Encoding.BROTLI) ? new Brotli(AppConfig.getInt("HTTP_COMPRESSION_BROTLI_LEVEL", 4)) : null,
+                new Gzip(AppConfig.getInt("HTTP_COMPRESSION_GZIP_LEVEL", 6))
+            );
+            compression.setDefaultMinSizeForCompression(AppConfig.getInt("HTTP_COMPRESSION_MIN_BYTES", 1_500));
+            config.http.customCompression(compression);
+        } else {
+            config.http.disableCompression();
+        }
+
+        config.jsonMapper(jsonMapper);
+
+        OpenApiConfig.register(config);
     }
 
-    private static void configureJavalin(JavalinConfig config) {
-        config.jsonMapper(new JavalinJackson().updateMapper(mapper -> {
+    /**
+     * Builds the JSON mapper used for all request and response bodies.
+     */
+    public static JavalinJackson createJsonMapper() {
+        return new JavalinJackson().updateMapper(mapper -> {
             mapper.findAndRegisterModules();
             mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-        }));
-
-        OpenApiConfig.register(config);
+        });
     }
 
-    private static void registerSecurity(Javalin app) {
+    /**
+     * Authenticates and authorizes requests to routes with roles, then applies the client's rate
+     * limit and the global load shedder. Routes without roles (health, readiness) bypass all of
+     * it. Anonymous requests are limited per IP, authenticated ones per user id. A scraper
+     * presenting {@code metricsScrapeToken} as its Bearer token may read the admin-only metrics.
+     */
+    private static void registerSecurity(Javalin app, RateLimiter rateLimiter, LoadShedder loadShedder, String metricsScrapeToken) {
         app.beforeMatched(ctx -> {
             var permittedRoles = ctx.routeRoles();
-            if (permittedRoles == null || permittedRoles.isEmpty() || permittedRoles.contains(Role.PUBLIC)) {
+            if (permittedRoles == null || permittedRoles.isEmpty()) {
+                return;
+            }
+            if (permittedRoles.contains(Role.PUBLIC)) {
+                limitTraffic(ctx, rateLimiter, loadShedder, "ip:" + ctx.ip());
+                return;
+            }
+            if (METRICS_PATH.equals(ctx.endpointHandlerPath()) && isScrapeToken(ctx.header(Header.AUTHORIZATION), metricsScrapeToken)) {
+                limitTraffic(ctx, rateLimiter, loadShedder, "metrics-scraper");
                 return;
             }
 
@@ -100,8 +278,8 @@ public final class Application {
                     String token = authHeader.substring("Bearer ".length());
                     try {
                         currentUserHolder[0] = JwtUtil.parseToken(token);
-                        // store parsed principal in session attribute for downstream handlers
-                        ctx.sessionAttribute("current-user", currentUserHolder[0]);
+                        // store parsed principal for downstream handlers (request-scoped in stateless mode)
+                        SecurityUtils.storeBearerUser(ctx, currentUserHolder[0]);
                     } catch (RuntimeException e) {
                         throw new UnauthorizedResponse();
                     }
@@ -111,18 +289,67 @@ public final class Application {
                 throw new UnauthorizedResponse();
             }
 
-            boolean authorized = permittedRoles.stream()
-                .map(role -> (Role) role)
-                .anyMatch(role -> role == currentUserHolder[0].role());
-
-            if (!authorized) {
+            if (!SecurityUtils.hasPermittedRole(permittedRoles, currentUserHolder[0])) {
                 throw new ForbiddenResponse();
             }
 
             ctx.attribute("currentUser", currentUserHolder[0]);
+            limitTraffic(ctx, rateLimiter, loadShedder, "user:" + currentUserHolder[0].id());
         });
     }
 
+    private static boolean isScrapeToken(String authorization, String metricsScrapeToken) {
+        if (metricsScrapeToken == null || authorization == null || !authorization.startsWith("Bearer ")) {
+            return false;
+        }
+        byte[] presented = authorization.substring("Bearer ".length()).getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(presented, metricsScrapeToken.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void limitTraffic(Context ctx, RateLimiter rateLimiter, LoadShedder loadShedder, String client) {
+        if (rateLimiter != null) {
+            long waitNanos = rateLimiter.tryAcquire(rateLimiter.budgetFor(ctx.routeRoles(), ctx.endpointHandlerPath()), client);
+            if (waitNanos > 0) {
+                long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+                ctx.header(Header.RETRY_AFTER, Long.toString(retryAfterSeconds));
+                throw new HttpResponseException(HttpStatus.TOO_MANY_REQUESTS.getCode(), "Too many requests, retry later");
+            }
+        }
+        if (loadShedder != null) {
+            loadShedder.admit(ctx, measuredRoute(ctx));
+        }
+    }
+
+    /**
+     * The route a request's latency is compared within by the load shedder, or {@code null} for
+     * requests it should not measure; streamed listings are as long-running as exports.
+     */
+    private static String measuredRoute(Context ctx) {
+        String path = ctx.endpointHandlerPath();
+        if (UNMEASURED_ROUTES.contains(path) || Boolean.parseBoolean(ctx.queryParam("stream"))) {
+            return null;
+        }
+        return ctx.method() + " " + path;
+    }
+
+    /**
+     * Starts the group-commit writer for product updates when {@code PRODUCT_WRITE_QUEUE_ENABLED}
+     * is set.
+     */
+    private static Optional<ProductWriteQueue> startProductWriteQueue(ProductRepository productRepository) {
+        if (!AppConfig.getBoolean("PRODUCT_WRITE_QUEUE_ENABLED", false)) {
+            return Optional.empty();
+        }
+        ProductWriteQueue queue = new ProductWriteQueue(
+            productRepository,
+            AppConfig.getInt("PRODUCT_WRITE_QUEUE_CAPACITY", 1_000),
+            AppConfig.getInt("PRODUCT_WRITE_GROUP_MAX", 100),
+            Duration.ofMillis(AppConfig.getInt("PRODUCT_WRITE_GROUP_DELAY_MS", 2))
+        );
+        queue.start();
+        return Optional.of(queue);
+    }
+
     private static void seedDefaultAdmin(AuthService authService) {
         String username = getEnv("DEFAULT_ADMIN_USERNAME", "admin");
         String password = getEnv("DEFAULT_ADMIN_PASSWORD", "password");
@@ -135,12 +362,11 @@ public final class Application {
     }
 
     private static String getEnv(String key, String fallback) {
-        String value = System.getenv(key);
-        return value == null || value.isBlank() ? fallback : value;
+        return AppConfig.get(key, fallback);
     }
 
     private static int resolvePort() {
-        String portValue = System.getenv("PORT");
+        String portValue = AppConfig.get("PORT", null);
         if (portValue == null || portValue.isBlank()) {
             return 7000;
         }
@@ -0,0 +1,68 @@
+package it.jaiki;
+
+import com.zaxxer.hikari.HikariDataSource;
+import it.jaiki.config.AppConfig;
+import it.jaiki.config.CacheConfig;
+import it.jaiki.config.DatabaseConfig;
+import it.jaiki.model.response.ProductImportResponse;
+import it.jaiki.repository.ProductRepository;
+import it.jaiki.service.ProductImportService;
+import it.jaiki.service.ProductImportService.Format;
+import it.jaiki.service.ProductService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Command line entry point for COPY-based product import/export, for nightly catalog syncs.
+ *
+ * <pre>
+ * java -cp app.jar it.jaiki.ProductCopyCli import products.csv [csv|ndjson]
+ * java -cp app.jar it.jaiki.ProductCopyCli export products.ndjson [csv|ndjson]
+ * </pre>
+ * A file name of {@code -} reads from stdin or writes to stdout.
+ */
+public final class ProductCopyCli {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProductCopyCli.class);
+
+    private ProductCopyCli() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !(args[0].equals("import") || args[0].equals("export"))) {
+            System.err.println("Usage: ProductCopyCli <import|export> <file|-> [csv|ndjson]");
+            System.exit(2);
+            return;
+        }
+        AppConfig.load();
+        Format format = Format.parse(args.length > 2 ? args[2] : null);
+
+        try (HikariDataSource dataSource = DatabaseConfig.createDataSource()) {
+            DatabaseConfig.runMigrations(dataSource);
+            ProductRepository repository = new ProductRepository(dataSource);
+            ProductService productService = new ProductService(repository, CacheConfig.createProductCache());
+            ProductImportService importService = new ProductImportService(repository, productService);
+
+            if (args[0].equals("import")) {
+                try (InputStream input = args[1].equals("-") ? System.in : Files.newInputStream(Path.of(args[1]))) {
+                    ProductImportResponse result = importService.importProducts(input, format);
+                    LOGGER.info("Imported {} products, rejected {}", result.getImported(), result.getRejected());
+                    result.getErrors().forEach(error -> LOGGER.warn("Line {}: {}", error.line(), error.error()));
+                }
+            } else {
+                try (OutputStream output = new BufferedOutputStream(
+                    args[1].equals("-") ? System.out : Files.newOutputStream(Path.of(args[1])))) {
+                    long exported = importService.exportProducts(output, format);
+                    LOGGER.info("Exported {} products", exported);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package it.jaiki.cache;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Small in-process LRU cache with per-entry TTL and single-flight loading.
+ *
+ * <p>Concurrent misses for the same key share one loader invocation. Values loaded while their key
+ * was invalidated are returned to the waiting callers but not stored, so a write can never be
+ * overwritten by a stale read that started before it. Callers arriving after an invalidation
+ * start a new load rather than joining one that began before it.
+ *
+ * <p>Invalidations are counted per stripe of keys, so a write only discards loads of keys in its
+ * own stripe. The counters are bumped and compared under the same lock that guards the entries,
+ * so an invalidation either happens before a loaded value is stored and discards it, or after and
+ * removes it.
+ */
+public final class BoundedCache<K, V> {
+
+    private static final int GENERATION_STRIPES = 256;
+
+    private final String name;
+    private final int maximumSize;
+    private final Function<V, Duration> ttlPolicy;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    /** Invalidations per key stripe; the last slot counts {@link #invalidateAll()} calls. */
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES + 1);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalescedLoads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public BoundedCache(String name, int maximumSize, Function<V, Duration> ttlPolicy) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.name = name;
+        this.maximumSize = maximumSize;
+        this.ttlPolicy = ttlPolicy;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > BoundedCache.this.maximumSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public V get(K key, Function<K, V> loader) {
+        V cached = getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<V> ownFuture = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, ownFuture);
+        if (existing != null) {
+            coalescedLoads.increment();
+            return join(existing);
+        }
+
+        long startGeneration = generation(key);
+        try {
+            loads.increment();
+            V value = loader.apply(key);
+            if (value != null) {
+                putIfUnchanged(key, value, startGeneration);
+            }
+            ownFuture.complete(value);
+            return value;
+        } catch (RuntimeException exception) {
+            ownFuture.completeExceptionally(exception);
+            throw exception;
+        } finally {
+            inFlight.remove(key, ownFuture);
+        }
+    }
+
+    public V getIfPresent(K key) {
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            if (entry.isExpired(System.nanoTime())) {
+                entries.remove(key);
+                expirations.increment();
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value();
+        }
+    }
+
+    public void put(K key, V value) {
+        Duration ttl = ttlPolicy.apply(value);
+        if (ttl.isZero() || ttl.isNegative()) {
+            return;
+        }
+        Entry<V> entry = new Entry<>(value, System.nanoTime() + ttl.toNanos());
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * The invalidation generation of {@code key}, to be read before loading its value for
+     * {@link #putIfUnchanged}.
+     */
+    public long generation(K key) {
+        // both counters only grow, so the sum changes whenever either does
+        return generations.get(stripe(key)) + generations.get(GENERATION_STRIPES);
+    }
+
+    /**
+     * Stores a value loaded outside {@link #get}, unless {@code key} was invalidated since
+     * {@code loadGeneration} was read.
+     */
+    public void putIfUnchanged(K key, V value, long loadGeneration) {
+        Duration ttl = ttlPolicy.apply(value);
+        if (ttl.isZero() || ttl.isNegative()) {
+            return;
+        }
+        Entry<V> entry = new Entry<>(value, System.nanoTime() + ttl.toNanos());
+        synchronized (entries) {
+            if (generation(key) == loadGeneration) {
+                entries.put(key, entry);
+            }
+        }
+    }
+
+    public void invalidate(K key) {
+        synchronized (entries) {
+            generations.incrementAndGet(stripe(key));
+            inFlight.remove(key);
+            if (entries.remove(key) != null) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            generations.incrementAndGet(GENERATION_STRIPES);
+            inFlight.clear();
+            invalidations.add(entries.size());
+            entries.clear();
+        }
+    }
+
+    public CacheStats stats() {
+        long size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new CacheStats(
+            name,
+            size,
+            maximumSize,
+            hits.sum(),
+            misses.sum(),
+            loads.sum(),
+            coalescedLoads.sum(),
+            evictions.sum(),
+            expirations.sum(),
+            invalidations.sum()
+        );
+    }
+
+    private static int stripe(Object key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    private V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw exception;
+        }
+    }
+
+    private record Entry<V>(V value, long expiresAtNanos) {
+        boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package it.jaiki.cache;
+
+/**
+ * Point-in-time snapshot of cache counters.
+ */
+public record CacheStats(
+    String name,
+    long size,
+    long maximumSize,
+    long hits,
+    long misses,
+    long loads,
+    long coalescedLoads,
+    long evictions,
+    long expirations,
+    long invalidations
+) {
+
+    public double hitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+}
@@ -0,0 +1,89 @@
+package it.jaiki.cache;
+
+import io.javalin.json.JsonMapper;
+import it.jaiki.model.Product;
+import it.jaiki.model.response.ProductPageResponse;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Serialized JSON bodies of product responses, ready to be written as bytes.
+ *
+ * <p>Entries validate themselves: a product's bytes are reused only for the same version, and
+ * the full list and pages are keyed by the collection change count they were rendered for, so a
+ * stale body is never served even for writes this instance did not see. Invalidation on local
+ * writes only releases memory early. Concurrent misses for the list or a page render it once.
+ */
+public final class ProductResponseCache {
+
+    private final JsonMapper jsonMapper;
+    private final BoundedCache<Long, SerializedProduct> products;
+    private final BoundedCache<Long, byte[]> collections;
+    private final BoundedCache<PageKey, byte[]> pages;
+
+    public ProductResponseCache(JsonMapper jsonMapper, int maxProducts, int maxPages, Duration ttl) {
+        this.jsonMapper = jsonMapper;
+        this.products = new BoundedCache<>("product-json", maxProducts, serialized -> ttl);
+        // the current rendering plus the one it is replacing
+        this.collections = new BoundedCache<>("product-list-json", 2, json -> ttl);
+        this.pages = new BoundedCache<>("product-page-json", maxPages, json -> ttl);
+    }
+
+    public byte[] product(Product product) {
+        SerializedProduct cached = products.getIfPresent(product.getId());
+        if (cached != null && cached.version() == product.getVersion()) {
+            return cached.json();
+        }
+        byte[] json = serialize(product, Product.class);
+        products.put(product.getId(), new SerializedProduct(product.getVersion(), json));
+        return json;
+    }
+
+    /**
+     * @param changeCount the collection version read before {@code products} is loaded; the
+     *                    rendered list is at least that recent
+     */
+    public byte[] collection(long changeCount, Supplier<List<Product>> products) {
+        return collections.get(changeCount, key -> serialize(products.get(), List.class));
+    }
+
+    /**
+     * Renders a page once per collection version and distinct {@code after}/{@code limit} request.
+     */
+    public byte[] page(long changeCount, String after, Integer limit, Supplier<ProductPageResponse> page) {
+        return pages.get(new PageKey(changeCount, after, limit), key -> serialize(page.get(), ProductPageResponse.class));
+    }
+
+    public void invalidate(long id) {
+        products.invalidate(id);
+        invalidateCollections();
+    }
+
+    public void invalidateCollections() {
+        collections.invalidateAll();
+        pages.invalidateAll();
+    }
+
+    public void invalidateAll() {
+        products.invalidateAll();
+        invalidateCollections();
+    }
+
+    public List<CacheStats> stats() {
+        return List.of(products.stats(), collections.stats(), pages.stats());
+    }
+
+    private byte[] serialize(Object value, Type type) {
+        return jsonMapper.toJsonString(value, type).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private record SerializedProduct(long version, byte[] json) {
+    }
+
+    private record PageKey(long changeCount, String after, Integer limit) {
+    }
+}
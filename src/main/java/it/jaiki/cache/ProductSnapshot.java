@@ -0,0 +1,137 @@
+package it.jaiki.cache;
+
+import it.jaiki.model.Product;
+import it.jaiki.repository.ProductRepository.CollectionVersion;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable copy of the products table, sorted by id.
+ *
+ * <p>Ids are kept in a primitive {@code long[]} next to a parallel {@code Product[]}, so a lookup
+ * is a binary search without boxing and a page is a sub-list view. Changes never modify a
+ * snapshot; {@link #withChanges} merges them into a new one, which readers pick up on their next
+ * access.
+ */
+public final class ProductSnapshot {
+
+    private static final ProductSnapshot EMPTY = new ProductSnapshot(new long[0], new Product[0], null);
+
+    private final long[] ids;
+    private final Product[] products;
+    private final List<Product> all;
+    private final CollectionVersion version;
+
+    private ProductSnapshot(long[] ids, Product[] products, CollectionVersion version) {
+        this.ids = ids;
+        this.products = products;
+        this.all = Collections.unmodifiableList(Arrays.asList(products));
+        this.version = version;
+    }
+
+    public static ProductSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param sortedProducts every product, in ascending id order
+     * @param version        the collection version read with or before the products, so it never claims
+     *                       changes the snapshot does not contain
+     */
+    public static ProductSnapshot of(List<Product> sortedProducts, CollectionVersion version) {
+        long[] ids = new long[sortedProducts.size()];
+        Product[] products = sortedProducts.toArray(new Product[0]);
+        for (int index = 0; index < products.length; index++) {
+            ids[index] = products[index].getId();
+            if (index > 0 && ids[index] <= ids[index - 1]) {
+                throw new IllegalArgumentException("Products must be sorted by ascending id");
+            }
+        }
+        return new ProductSnapshot(ids, products, version);
+    }
+
+    public Product find(long id) {
+        int index = Arrays.binarySearch(ids, id);
+        return index >= 0 ? products[index] : null;
+    }
+
+    public List<Product> all() {
+        return all;
+    }
+
+    /**
+     * Returns at most {@code limit} products with an id strictly greater than {@code afterId}.
+     */
+    public List<Product> page(long afterId, int limit) {
+        int index = Arrays.binarySearch(ids, afterId);
+        int from = index >= 0 ? index + 1 : -index - 1;
+        return all.subList(from, Math.min(products.length, from + limit));
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public CollectionVersion version() {
+        return version;
+    }
+
+    /**
+     * Returns a new snapshot in which each of {@code changedIds} holds its row from {@code current},
+     * or is removed when {@code current} has no row for it.
+     *
+     * @param changedIds ascending, without duplicates
+     */
+    public ProductSnapshot withChanges(long[] changedIds, Map<Long, Product> current, CollectionVersion newVersion) {
+        long[] mergedIds = new long[ids.length + changedIds.length];
+        Product[] merged = new Product[mergedIds.length];
+        int kept = 0;
+        int size = 0;
+        for (long changedId : changedIds) {
+            int until = Arrays.binarySearch(ids, kept, ids.length, changedId);
+            int end = until >= 0 ? until : -until - 1;
+            // unchanged run before the changed id
+            System.arraycopy(ids, kept, mergedIds, size, end - kept);
+            System.arraycopy(products, kept, merged, size, end - kept);
+            size += end - kept;
+            kept = until >= 0 ? end + 1 : end;
+            Product product = current.get(changedId);
+            if (product != null) {
+                mergedIds[size] = changedId;
+                merged[size++] = product;
+            }
+        }
+        System.arraycopy(ids, kept, mergedIds, size, ids.length - kept);
+        System.arraycopy(products, kept, merged, size, ids.length - kept);
+        size += ids.length - kept;
+        return new ProductSnapshot(Arrays.copyOf(mergedIds, size), Arrays.copyOf(merged, size), newVersion);
+    }
+
+    /**
+     * Counts the ids that are missing from one of the two snapshots or differ in version.
+     */
+    public int differencesFrom(ProductSnapshot other) {
+        int differences = 0;
+        int left = 0;
+        int right = 0;
+        while (left < ids.length && right < other.ids.length) {
+            if (ids[left] == other.ids[right]) {
+                if (products[left].getVersion() != other.products[right].getVersion()) {
+                    differences++;
+                }
+                left++;
+                right++;
+            } else if (ids[left] < other.ids[right]) {
+                differences++;
+                left++;
+            } else {
+                differences++;
+                right++;
+            }
+        }
+        return differences + (ids.length - left) + (other.ids.length - right);
+    }
+}
@@ -0,0 +1,85 @@
+package it.jaiki.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Merges concurrent identical calls into one, without keeping the result afterwards.
+ *
+ * <p>The first caller for a key runs the call; callers arriving while it is in flight wait for it
+ * and share its result or exception. A flight only accepts callers of the generation it started
+ * in, and {@link #invalidate()} starts a new one, so a read that began before a write is never
+ * handed to someone who issued theirs after it.
+ */
+public final class RequestCoalescer<K, V> {
+
+    private final String name;
+    private final ConcurrentHashMap<Flight<K>, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public RequestCoalescer(String name) {
+        this.name = name;
+    }
+
+    public V execute(K key, Function<K, V> call) {
+        calls.increment();
+        Flight<K> flight = new Flight<>(key, generation.get());
+        CompletableFuture<V> ownFuture = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(flight, ownFuture);
+        if (existing != null) {
+            coalesced.increment();
+            return join(existing);
+        }
+
+        try {
+            executions.increment();
+            V value = call.apply(key);
+            ownFuture.complete(value);
+            return value;
+        } catch (RuntimeException exception) {
+            ownFuture.completeExceptionally(exception);
+            throw exception;
+        } finally {
+            inFlight.remove(flight, ownFuture);
+        }
+    }
+
+    /**
+     * Makes later callers start new calls instead of joining the ones in flight.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    public Stats stats() {
+        return new Stats(name, inFlight.size(), calls.sum(), executions.sum(), coalesced.sum());
+    }
+
+    private V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw exception;
+        }
+    }
+
+    private record Flight<K>(K key, long generation) {
+    }
+
+    /**
+     * Point-in-time counters; {@code calls} is {@code executions} plus {@code coalesced}.
+     */
+    public record Stats(String name, int inFlight, long calls, long executions, long coalesced) {
+    }
+}
@@ -4,9 +4,9 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Small application configuration helper. Loads a local `.env` (if present) and
@@ -15,7 +15,7 @@ import java.util.Map;
 public final class AppConfig {
 
     private static final Path DOTENV_PATH = Path.of(".env");
-    private static final Map<String, String> local = new HashMap<>();
+    private static final Map<String, String> local = new ConcurrentHashMap<>();
 
     private AppConfig() {
     }
@@ -43,6 +43,14 @@ public final class AppConfig {
         }
     }
 
+    /**
+     * Overrides a value for the rest of this process, taking precedence over `.env` and the
+     * environment. Used by in-process tooling such as the load-test harness.
+     */
+    public static void set(String key, String value) {
+        local.put(key, value);
+    }
+
     public static String get(String key, String fallback) {
         String v = local.get(key);
         if (v != null && !v.isBlank()) return v;
@@ -50,6 +58,22 @@ public final class AppConfig {
         return env == null || env.isBlank() ? fallback : env;
     }
 
+    public static int getInt(String key, int fallback) {
+        String v = get(key, null);
+        if (v == null) return fallback;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean fallback) {
+        String v = get(key, null);
+        if (v == null) return fallback;
+        return v.equalsIgnoreCase("1") || v.equalsIgnoreCase("true") || v.equalsIgnoreCase("yes");
+    }
+
     public static boolean isDev() {
         String env = get("APP_ENV", "development");
         return env.equalsIgnoreCase("development") || env.equalsIgnoreCase("dev");
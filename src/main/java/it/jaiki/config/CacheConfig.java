@@ -0,0 +1,54 @@
+package it.jaiki.config;
+
+import io.javalin.json.JsonMapper;
+import it.jaiki.cache.BoundedCache;
+import it.jaiki.cache.ProductResponseCache;
+import it.jaiki.model.Product;
+import it.jaiki.repository.ProductRepository;
+import it.jaiki.service.ProductIndex;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Builds the in-process caches from environment configuration.
+ */
+public final class CacheConfig {
+
+    private CacheConfig() {
+    }
+
+    public static BoundedCache<Long, Optional<Product>> createProductCache() {
+        int maximumSize = AppConfig.getInt("PRODUCT_CACHE_MAX_SIZE", 10_000);
+        Duration ttl = Duration.ofSeconds(AppConfig.getInt("PRODUCT_CACHE_TTL_SECONDS", 60));
+        // missing ids are cached briefly so 404 floods don't reach the database
+        Duration negativeTtl = Duration.ofSeconds(AppConfig.getInt("PRODUCT_CACHE_NEGATIVE_TTL_SECONDS", 5));
+        return new BoundedCache<>("products", maximumSize, product -> product.isPresent() ? ttl : negativeTtl);
+    }
+
+    /**
+     * Builds the cache of serialized product response bodies, rendered with {@code jsonMapper}.
+     */
+    public static ProductResponseCache createProductResponseCache(JsonMapper jsonMapper) {
+        return new ProductResponseCache(
+            jsonMapper,
+            AppConfig.getInt("PRODUCT_JSON_CACHE_MAX_PRODUCTS", 10_000),
+            AppConfig.getInt("PRODUCT_JSON_CACHE_MAX_PAGES", 1_000),
+            Duration.ofSeconds(AppConfig.getInt("PRODUCT_CACHE_TTL_SECONDS", 60))
+        );
+    }
+
+    /**
+     * Starts the in-memory product index when {@code PRODUCT_INDEX_ENABLED} is set. It loads in the
+     * background; reads go to the database until it is ready.
+     */
+    public static Optional<ProductIndex> startProductIndex(ProductRepository repository) {
+        if (!AppConfig.getBoolean("PRODUCT_INDEX_ENABLED", false)) {
+            return Optional.empty();
+        }
+        Duration reconcileInterval = Duration.ofSeconds(AppConfig.getInt("PRODUCT_INDEX_RECONCILE_SECONDS", 300));
+        ProductIndex index = new ProductIndex(repository, DatabaseConfig::openDirectConnection, reconcileInterval);
+        index.start();
+        return Optional.of(index);
+    }
+}
@@ -2,10 +2,18 @@ package it.jaiki.config;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import it.jaiki.db.ConcurrencyLimitedDataSource;
+import it.jaiki.db.PoolSizingAdvisor;
+import it.jaiki.db.ReplicaFallbackDataSource;
+import it.jaiki.db.TracingDataSource;
 import org.flywaydb.core.Flyway;
 
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
 import java.time.Duration;
+import java.util.Optional;
 
 public final class DatabaseConfig {
 
@@ -23,13 +31,128 @@ public final class DatabaseConfig {
         config.setPassword(getEnv("DB_PASSWORD", DEFAULT_PASSWORD));
         config.setDriverClassName("org.postgresql.Driver");
         config.setPoolName("javalin-hikari-pool");
-        config.setMaximumPoolSize(10);
-        config.setMinimumIdle(2);
-        config.setConnectionTimeout(Duration.ofSeconds(30).toMillis());
-        config.setLeakDetectionThreshold(Duration.ofSeconds(30).toMillis());
+        config.setMaximumPoolSize(AppConfig.getInt("DB_POOL_MAX_SIZE", 10));
+        config.setMinimumIdle(AppConfig.getInt("DB_POOL_MIN_IDLE", 2));
+        config.setConnectionTimeout(AppConfig.getInt("DB_CONNECTION_TIMEOUT_MS", 30_000));
+        config.setValidationTimeout(AppConfig.getInt("DB_VALIDATION_TIMEOUT_MS", 5_000));
+        config.setIdleTimeout(AppConfig.getInt("DB_IDLE_TIMEOUT_MS", 600_000));
+        config.setMaxLifetime(AppConfig.getInt("DB_MAX_LIFETIME_MS", 1_800_000));
+        config.setKeepaliveTime(AppConfig.getInt("DB_KEEPALIVE_TIME_MS", 0));
+        config.setLeakDetectionThreshold(AppConfig.getInt("DB_LEAK_DETECTION_MS", 30_000));
+        configureStatementCache(config);
         return new HikariDataSource(config);
     }
 
+    /**
+     * Starts the pool sizing advisor when {@code DB_POOL_ADAPTIVE} is enabled. Unless
+     * {@code DB_CONCURRENCY_LIMIT} is set explicitly, the admission limit follows the pool size.
+     */
+    public static Optional<PoolSizingAdvisor> startPoolSizingAdvisor(HikariDataSource dataSource,
+                                                                     ConcurrencyLimitedDataSource limitedDataSource) {
+        if (!AppConfig.getBoolean("DB_POOL_ADAPTIVE", false)) {
+            return Optional.empty();
+        }
+        boolean limitFollowsPool = AppConfig.get("DB_CONCURRENCY_LIMIT", null) == null;
+        PoolSizingAdvisor advisor = new PoolSizingAdvisor(
+            dataSource.getHikariPoolMXBean(),
+            dataSource.getHikariConfigMXBean(),
+            limitedDataSource,
+            AppConfig.getInt("DB_POOL_ADAPTIVE_MIN_SIZE", Math.max(dataSource.getMinimumIdle(), dataSource.getMaximumPoolSize() / 2)),
+            AppConfig.getInt("DB_POOL_ADAPTIVE_MAX_SIZE", dataSource.getMaximumPoolSize() * 4),
+            Duration.ofMillis(AppConfig.getInt("DB_POOL_ADAPTIVE_TARGET_ACQUIRE_MS", 5)),
+            AppConfig.getInt("DB_POOL_ADAPTIVE_SHRINK_AFTER_TICKS", 6),
+            size -> {
+                if (limitFollowsPool) {
+                    limitedDataSource.resize(size);
+                }
+            }
+        );
+        advisor.start(Duration.ofMillis(AppConfig.getInt("DB_POOL_ADAPTIVE_INTERVAL_MS", 5_000)));
+        return Optional.of(advisor);
+    }
+
+    /**
+     * Creates the read replica pool when {@code DB_READ_URL} is set. Credentials default to the
+     * primary's. The pool is sized on its own and uses a short connection timeout, so reads fall
+     * back to the primary quickly when the replica is down.
+     */
+    public static Optional<HikariDataSource> createReadDataSource() {
+        String url = getEnv("DB_READ_URL", null);
+        if (url == null) {
+            return Optional.empty();
+        }
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setUsername(getEnv("DB_READ_USER", getEnv("DB_USER", DEFAULT_USERNAME)));
+        config.setPassword(getEnv("DB_READ_PASSWORD", getEnv("DB_PASSWORD", DEFAULT_PASSWORD)));
+        config.setDriverClassName("org.postgresql.Driver");
+        config.setPoolName("javalin-hikari-read-pool");
+        config.setReadOnly(true);
+        config.setMaximumPoolSize(AppConfig.getInt("DB_READ_POOL_SIZE", 10));
+        config.setMinimumIdle(AppConfig.getInt("DB_READ_MIN_IDLE", 2));
+        config.setConnectionTimeout(AppConfig.getInt("DB_READ_CONNECTION_TIMEOUT_MS", 1_000));
+        config.setLeakDetectionThreshold(Duration.ofSeconds(30).toMillis());
+        // start even if the replica is down; reads are served by the primary meanwhile
+        config.setInitializationFailTimeout(-1);
+        configureStatementCache(config);
+        return Optional.of(new HikariDataSource(config));
+    }
+
+    /**
+     * Sizes pgjdbc's per-connection statement cache and sets after how many executions on a
+     * connection a statement is prepared server-side. Registered hot statements are prepared on
+     * their first execution regardless; {@code DB_PREPARE_THRESHOLD=0} turns server-side prepares
+     * off entirely, as needed behind a transaction-mode pooler.
+     */
+    private static void configureStatementCache(HikariConfig config) {
+        config.addDataSourceProperty("prepareThreshold", AppConfig.getInt("DB_PREPARE_THRESHOLD", 5));
+        config.addDataSourceProperty("preparedStatementCacheQueries", AppConfig.getInt("DB_PREPARED_STATEMENT_CACHE_QUERIES", 256));
+        config.addDataSourceProperty("preparedStatementCacheSizeMiB", AppConfig.getInt("DB_PREPARED_STATEMENT_CACHE_MIB", 5));
+    }
+
+    /**
+     * Opens an unpooled connection to the primary, for long-lived sessions such as {@code LISTEN}
+     * that would otherwise pin a pool connection and trip leak detection.
+     */
+    public static Connection openDirectConnection() throws SQLException {
+        return DriverManager.getConnection(
+            getEnv("DB_URL", DEFAULT_URL),
+            getEnv("DB_USER", DEFAULT_USERNAME),
+            getEnv("DB_PASSWORD", DEFAULT_PASSWORD)
+        );
+    }
+
+    public static ReplicaFallbackDataSource withPrimaryFallback(DataSource replica, DataSource primary) {
+        Duration retryInterval = Duration.ofMillis(AppConfig.getInt("DB_READ_RETRY_INTERVAL_MS", 5_000));
+        return new ReplicaFallbackDataSource(replica, primary, retryInterval);
+    }
+
+    /**
+     * Wraps the pool with a fair admission limit, sized to the pool by default, so that large numbers
+     * of (virtual) request threads queue in order for a connection.
+     */
+    public static ConcurrencyLimitedDataSource limitConcurrency(HikariDataSource dataSource) {
+        int permits = AppConfig.getInt("DB_CONCURRENCY_LIMIT", dataSource.getMaximumPoolSize());
+        // request threads give up quickly and shed load instead of piling up behind a saturated pool
+        Duration acquireTimeout = Duration.ofMillis(AppConfig.getInt("DB_ACQUIRE_TIMEOUT_MS", 2_000));
+        return new ConcurrencyLimitedDataSource(dataSource, permits, acquireTimeout);
+    }
+
+    /**
+     * Wraps the data source with statement and connection-hold tracing. Slow executions and long
+     * connection holds are logged with the repository method responsible. Off by default: tracing
+     * proxies every connection, statement and result set, which taxes each column read.
+     */
+    public static TracingDataSource trace(DataSource dataSource) {
+        return new TracingDataSource(
+            dataSource,
+            AppConfig.getBoolean("DB_TRACE_ENABLED", false),
+            Duration.ofMillis(AppConfig.getInt("DB_SLOW_STATEMENT_MS", 200)),
+            Duration.ofMillis(AppConfig.getInt("DB_SLOW_HOLD_MS", 1_000)),
+            AppConfig.getInt("DB_TRACE_MAX_SHAPES", 500)
+        );
+    }
+
     public static void runMigrations(DataSource dataSource) {
         Flyway.configure()
             .dataSource(dataSource)
@@ -40,7 +163,6 @@ public final class DatabaseConfig {
     }
 
     private static String getEnv(String key, String fallback) {
-        String value = System.getenv(key);
-        return value == null || value.isBlank() ? fallback : value;
+        return AppConfig.get(key, fallback);
     }
 }
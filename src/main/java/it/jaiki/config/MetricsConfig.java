@@ -0,0 +1,205 @@
+package it.jaiki.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.jvm.ClassLoaderMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmGcMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.core.instrument.binder.system.ProcessorMetrics;
+import io.micrometer.core.instrument.binder.system.UptimeMetrics;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import it.jaiki.cache.CacheStats;
+import it.jaiki.db.ConcurrencyLimitedDataSource;
+import it.jaiki.db.ReplicaFallbackDataSource;
+import it.jaiki.db.TracingDataSource;
+import it.jaiki.security.LoadShedder;
+import it.jaiki.security.RateLimiter;
+import it.jaiki.service.HashingExecutor;
+import it.jaiki.service.ProductWriteQueue;
+
+import java.util.function.Supplier;
+
+/**
+ * Builds the Prometheus meter registry and binds JVM and connection pool metrics to it.
+ */
+public final class MetricsConfig {
+
+    private MetricsConfig() {
+    }
+
+    public static PrometheusMeterRegistry createRegistry() {
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        registry.config().commonTags("application", AppConfig.get("METRICS_APPLICATION_TAG", "javalin-product-service"));
+        new JvmGcMetrics().bindTo(registry);
+        new JvmThreadMetrics().bindTo(registry);
+        new JvmMemoryMetrics().bindTo(registry);
+        new ClassLoaderMetrics().bindTo(registry);
+        new ProcessorMetrics().bindTo(registry);
+        new UptimeMetrics().bindTo(registry);
+        return registry;
+    }
+
+    /**
+     * Publishes the {@code hikaricp.connections.*} pool metrics (active, idle, pending, acquire,
+     * usage and creation time), tagged with the pool name.
+     */
+    public static void bindPool(PrometheusMeterRegistry registry, HikariDataSource dataSource) {
+        dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+    }
+
+    /**
+     * Publishes the admission queue in front of the primary pool.
+     */
+    public static void bindAdmissionLimit(PrometheusMeterRegistry registry, ConcurrencyLimitedDataSource limitedDataSource) {
+        Gauge.builder("db.admission.waiting", limitedDataSource, ConcurrencyLimitedDataSource::queueLength)
+            .description("Threads waiting for a database connection slot")
+            .register(registry);
+        Gauge.builder("db.admission.available", limitedDataSource, ConcurrencyLimitedDataSource::availablePermits)
+            .description("Free database connection slots")
+            .register(registry);
+    }
+
+    /**
+     * Publishes traced statement executions and how many of them ran as server-side prepared
+     * statements, i.e. without parse and plan.
+     */
+    public static void bindStatementTrace(PrometheusMeterRegistry registry, TracingDataSource tracedDataSource) {
+        FunctionCounter.builder("db.statements.executions", tracedDataSource, traced -> traced.summary().executions())
+            .description("Traced statement executions")
+            .register(registry);
+        FunctionCounter.builder("db.statements.server.prepared", tracedDataSource, traced -> traced.summary().serverPreparedExecutions())
+            .description("Traced statement executions that ran as server-side prepared statements")
+            .register(registry);
+    }
+
+    /**
+     * Publishes replica availability and how many borrows were served by the primary instead.
+     */
+    public static void bindReplicaFallback(PrometheusMeterRegistry registry, ReplicaFallbackDataSource readDataSource) {
+        Gauge.builder("db.replica.available", readDataSource, replica -> replica.isReplicaAvailable() ? 1 : 0)
+            .description("1 while reads are routed to the replica, 0 while they fall back to the primary")
+            .register(registry);
+        FunctionCounter.builder("db.replica.fallbacks", readDataSource, ReplicaFallbackDataSource::fallbacks)
+            .description("Replica reads served by the primary")
+            .register(registry);
+    }
+
+    /**
+     * Publishes rejected requests per rate-limit budget, the number of tracked clients and the
+     * buckets evicted to stay within the client limit.
+     */
+    public static void bindRateLimiter(PrometheusMeterRegistry registry, RateLimiter rateLimiter) {
+        for (RateLimiter.Budget budget : rateLimiter.budgets()) {
+            FunctionCounter.builder("http.rate.limited", budget, RateLimiter.Budget::rejected)
+                .description("Requests rejected with 429 because the client exceeded its budget")
+                .tag("budget", budget.name())
+                .register(registry);
+        }
+        Gauge.builder("http.rate.clients", rateLimiter, RateLimiter::trackedClients)
+            .description("Client buckets currently tracked by the rate limiter")
+            .register(registry);
+        FunctionCounter.builder("http.rate.clients.evicted", rateLimiter, RateLimiter::evictions)
+            .description("Client buckets dropped to stay within RATE_LIMIT_MAX_CLIENTS")
+            .register(registry);
+    }
+
+    /**
+     * Publishes the adaptive concurrency limit, the requests in flight and the requests shed.
+     */
+    public static void bindLoadShedder(PrometheusMeterRegistry registry, LoadShedder loadShedder) {
+        Gauge.builder("http.concurrency.limit", loadShedder, LoadShedder::limit)
+            .description("Current adaptive limit on concurrent requests")
+            .register(registry);
+        Gauge.builder("http.concurrency.inflight", loadShedder, LoadShedder::inFlight)
+            .description("Admitted requests still in flight")
+            .register(registry);
+        FunctionCounter.builder("http.load.shed", loadShedder, LoadShedder::shed)
+            .description("Requests rejected with 503 because the concurrency limit was reached")
+            .register(registry);
+    }
+
+    /**
+     * Publishes a {@link it.jaiki.cache.BoundedCache}'s counters as the usual {@code cache.*}
+     * meters, tagged with the cache name.
+     */
+    public static void bindCache(PrometheusMeterRegistry registry, Supplier<CacheStats> stats) {
+        String cache = stats.get().name();
+        Gauge.builder("cache.size", stats, current -> current.get().size())
+            .description("Entries currently cached")
+            .tag("cache", cache)
+            .register(registry);
+        FunctionCounter.builder("cache.gets", stats, current -> current.get().hits())
+            .description("Cache lookups")
+            .tag("cache", cache)
+            .tag("result", "hit")
+            .register(registry);
+        FunctionCounter.builder("cache.gets", stats, current -> current.get().misses())
+            .description("Cache lookups")
+            .tag("cache", cache)
+            .tag("result", "miss")
+            .register(registry);
+        FunctionCounter.builder("cache.loads", stats, current -> current.get().loads())
+            .description("Loader invocations on a miss")
+            .tag("cache", cache)
+            .register(registry);
+        FunctionCounter.builder("cache.loads.coalesced", stats, current -> current.get().coalescedLoads())
+            .description("Misses that joined a load already in flight")
+            .tag("cache", cache)
+            .register(registry);
+        FunctionCounter.builder("cache.evictions", stats, current -> current.get().evictions())
+            .description("Entries evicted to stay within the maximum size")
+            .tag("cache", cache)
+            .register(registry);
+        FunctionCounter.builder("cache.expirations", stats, current -> current.get().expirations())
+            .description("Entries dropped after their TTL")
+            .tag("cache", cache)
+            .register(registry);
+        FunctionCounter.builder("cache.invalidations", stats, current -> current.get().invalidations())
+            .description("Entries dropped by writes")
+            .tag("cache", cache)
+            .register(registry);
+    }
+
+    /**
+     * Publishes the password hashing pool's occupancy and outcomes.
+     */
+    public static void bindHashingExecutor(PrometheusMeterRegistry registry, HashingExecutor executor) {
+        Gauge.builder("auth.hashing.active", executor, pool -> pool.stats().activeThreads())
+            .description("Hashing threads currently busy")
+            .register(registry);
+        Gauge.builder("auth.hashing.queued", executor, pool -> pool.stats().queueDepth())
+            .description("Hashing tasks waiting for a thread")
+            .register(registry);
+        FunctionCounter.builder("auth.hashing.completed", executor, pool -> pool.stats().completed())
+            .description("Hashing tasks completed")
+            .register(registry);
+        FunctionCounter.builder("auth.hashing.rejected", executor, pool -> pool.stats().rejected())
+            .description("Hashing tasks rejected because the pool was saturated")
+            .register(registry);
+    }
+
+    /**
+     * Publishes the product update queue's depth and how many updates share each commit.
+     */
+    public static void bindProductWriteQueue(PrometheusMeterRegistry registry, ProductWriteQueue queue) {
+        Gauge.builder("products.write.queue.depth", queue, writes -> writes.stats().queueDepth())
+            .description("Product updates waiting for the writer")
+            .register(registry);
+        FunctionCounter.builder("products.write.groups", queue, writes -> writes.stats().groups())
+            .description("Group commits of product updates")
+            .register(registry);
+        FunctionCounter.builder("products.write.updates", queue, writes -> writes.stats().updates())
+            .description("Product updates committed in groups")
+            .register(registry);
+        FunctionCounter.builder("products.write.fallbacks", queue, writes -> writes.stats().fallbacks())
+            .description("Failed groups whose updates were retried one by one")
+            .register(registry);
+        FunctionCounter.builder("products.write.rejected", queue, writes -> writes.stats().rejected())
+            .description("Product updates rejected because the queue was full")
+            .register(registry);
+    }
+}
@@ -0,0 +1,55 @@
+package it.jaiki.config;
+
+import it.jaiki.security.LoadShedder;
+import it.jaiki.security.RateLimiter;
+
+import java.util.Optional;
+
+/**
+ * Builds the per-client rate limiter and the global load shedder from environment configuration.
+ */
+public final class TrafficConfig {
+
+    private TrafficConfig() {
+    }
+
+    /**
+     * Builds the rate limiter when {@code RATE_LIMIT_ENABLED} is set; a budget with a rate of
+     * {@code 0} is not limited.
+     */
+    public static Optional<RateLimiter> createRateLimiter() {
+        if (!AppConfig.getBoolean("RATE_LIMIT_ENABLED", false)) {
+            return Optional.empty();
+        }
+        return Optional.of(new RateLimiter(
+            budget("public", "RATE_LIMIT_PUBLIC", 50, 100),
+            budget("user", "RATE_LIMIT_USER", 50, 100),
+            budget("admin", "RATE_LIMIT_ADMIN", 20, 40),
+            // login and registration hash passwords, a few attempts per client are plenty
+            budget("auth", "RATE_LIMIT_AUTH", 1, 5),
+            AppConfig.getInt("RATE_LIMIT_MAX_CLIENTS", 100_000)
+        ));
+    }
+
+    /**
+     * Builds the load shedder when {@code LOAD_SHED_ENABLED} is set.
+     */
+    public static Optional<LoadShedder> createLoadShedder() {
+        if (!AppConfig.getBoolean("LOAD_SHED_ENABLED", false)) {
+            return Optional.empty();
+        }
+        return Optional.of(new LoadShedder(
+            AppConfig.getInt("LOAD_SHED_MIN_LIMIT", 16),
+            AppConfig.getInt("LOAD_SHED_MAX_LIMIT", 1_000),
+            AppConfig.getInt("LOAD_SHED_LATENCY_TOLERANCE_PERCENT", 200) / 100.0
+        ));
+    }
+
+    private static RateLimiter.Budget budget(String name, String prefix, int perSecond, int burst) {
+        return new RateLimiter.Budget(
+            name,
+            AppConfig.getInt(prefix + "_PER_SECOND", perSecond),
+            AppConfig.getInt(prefix + "_BURST", burst)
+        );
+    }
+}
@@ -1,5 +1,7 @@
 package it.jaiki.controller;
 
+import it.jaiki.cache.CacheStats;
+import it.jaiki.config.AppConfig;
 import it.jaiki.model.request.UserLoginRequest;
 import it.jaiki.model.request.UserRegistrationRequest;
 import it.jaiki.model.response.LoginResponse;
@@ -12,18 +14,22 @@ import it.jaiki.service.AuthService;
 import it.jaiki.service.AuthService.AuthenticationException;
 import it.jaiki.service.AuthService.DuplicateUserException;
 import it.jaiki.service.AuthService.ValidationException;
+import it.jaiki.service.HashingExecutor;
 import it.jaiki.repository.UserRepository;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
 import io.javalin.http.HttpStatus;
 import io.javalin.openapi.HttpMethod;
 import io.javalin.openapi.OpenApi;
 import io.javalin.openapi.OpenApiContent;
+import io.javalin.openapi.OpenApiParam;
 import io.javalin.openapi.OpenApiRequestBody;
 import io.javalin.openapi.OpenApiResponse;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.sql.SQLTransientConnectionException;
 import java.util.Optional;
 
 /**
@@ -42,11 +48,15 @@ public final class AuthController {
         app.post("/api/auth/login", this::login, Role.PUBLIC);
         app.post("/api/auth/logout", this::logout, Role.USER, Role.ADMIN);
         app.get("/api/auth/me", this::currentUser, Role.USER, Role.ADMIN);
+        app.get("/api/admin/cache/jwt", this::tokenCacheStats, Role.ADMIN);
+        app.post("/api/admin/auth/jwt-secret/reload", this::reloadJwtSecret, Role.ADMIN);
+        app.get("/api/admin/auth/hashing", this::hashingStats, Role.ADMIN);
 
         app.exception(ValidationException.class, this::handleValidationException);
         app.exception(DuplicateUserException.class, this::handleDuplicateUserException);
         app.exception(AuthenticationException.class, this::handleAuthenticationException);
         app.exception(UserRepository.RepositoryException.class, this::handleRepositoryException);
+        app.exception(HashingExecutor.SaturatedException.class, this::handleSaturatedException);
     }
 
     @OpenApi(
@@ -54,18 +64,24 @@ public final class AuthController {
         methods = {HttpMethod.POST},
         summary = "Register a new account",
         tags = {"Authentication"},
+        queryParams = {
+            @OpenApiParam(name = "session", type = Boolean.class, description = "Create a cookie session when AUTH_STATELESS is enabled")
+        },
         requestBody = @OpenApiRequestBody(content = {@OpenApiContent(from = UserRegistrationRequest.class)}),
         responses = {
             @OpenApiResponse(status = "201", description = "User registered", content = {@OpenApiContent(from = UserResponse.class)}),
             @OpenApiResponse(status = "400", description = "Validation error", content = {@OpenApiContent(from = ErrorResponse.class)}),
-            @OpenApiResponse(status = "409", description = "Duplicate username", content = {@OpenApiContent(from = ErrorResponse.class)})
+            @OpenApiResponse(status = "409", description = "Duplicate username", content = {@OpenApiContent(from = ErrorResponse.class)}),
+            @OpenApiResponse(status = "503", description = "Hashing pool saturated", content = {@OpenApiContent(from = ErrorResponse.class)})
         }
     )
     private void register(Context ctx) {
         UserRegistrationRequest request = ctx.bodyAsClass(UserRegistrationRequest.class);
-        UserResponse user = authService.register(request);
-        SecurityUtils.storeCurrentUser(ctx, toAuthenticatedUser(user));
-        ctx.status(HttpStatus.CREATED).json(user);
+        // BCrypt runs on the hashing pool so the request thread is released meanwhile
+        ctx.future(() -> authService.register(request).thenAccept(user -> {
+            SecurityUtils.storeCurrentUser(ctx, toAuthenticatedUser(user));
+            ctx.status(HttpStatus.CREATED).json(user);
+        }));
     }
 
     @OpenApi(
@@ -73,17 +89,23 @@ public final class AuthController {
         methods = {HttpMethod.POST},
         summary = "Authenticate an existing user",
         tags = {"Authentication"},
+        queryParams = {
+            @OpenApiParam(name = "session", type = Boolean.class, description = "Create a cookie session when AUTH_STATELESS is enabled")
+        },
         requestBody = @OpenApiRequestBody(content = {@OpenApiContent(from = UserLoginRequest.class)}),
         responses = {
             @OpenApiResponse(status = "200", description = "Login successful", content = {@OpenApiContent(from = LoginResponse.class)}),
             @OpenApiResponse(status = "400", description = "Validation error", content = {@OpenApiContent(from = ErrorResponse.class)}),
-            @OpenApiResponse(status = "401", description = "Invalid credentials", content = {@OpenApiContent(from = ErrorResponse.class)})
+            @OpenApiResponse(status = "401", description = "Invalid credentials", content = {@OpenApiContent(from = ErrorResponse.class)}),
+            @OpenApiResponse(status = "503", description = "Hashing pool saturated", content = {@OpenApiContent(from = ErrorResponse.class)})
         }
     )
     private void login(Context ctx) {
         UserLoginRequest request = ctx.bodyAsClass(UserLoginRequest.class);
-        UserResponse user = authService.login(request);
+        ctx.future(() -> authService.login(request).thenAccept(user -> completeLogin(ctx, user)));
+    }
 
+    private void completeLogin(Context ctx, UserResponse user) {
         // generate a JWT and return it alongside the user info
         String token = null;
         try {
@@ -93,7 +115,7 @@ public final class AuthController {
             return;
         }
 
-        // also store in session for compatibility with session based flows
+        // also store in session for cookie based clients (always, unless AUTH_STATELESS is enabled)
         SecurityUtils.storeCurrentUser(ctx, toAuthenticatedUser(user));
 
         ctx.json(new LoginResponse(token, user));
@@ -140,6 +162,54 @@ public final class AuthController {
         ctx.json(user.get());
     }
 
+    @OpenApi(
+        path = "/api/admin/cache/jwt",
+        methods = {HttpMethod.GET},
+        summary = "Verified token cache counters",
+        tags = {"Admin"},
+        responses = {
+            @OpenApiResponse(status = "200", content = {@OpenApiContent(from = CacheStats.class)})
+        }
+    )
+    private void tokenCacheStats(Context ctx) {
+        ctx.json(JwtUtil.cacheStats());
+    }
+
+    @OpenApi(
+        path = "/api/admin/auth/jwt-secret/reload",
+        methods = {HttpMethod.POST},
+        summary = "Re-read DEFAULT_JWT_SECRET from .env and the environment and start signing with it",
+        description = "Every token issued with the previous secret, including the caller's, stops verifying.",
+        tags = {"Admin"},
+        responses = {
+            @OpenApiResponse(status = "204"),
+            @OpenApiResponse(status = "400", content = {@OpenApiContent(from = ErrorResponse.class)})
+        }
+    )
+    private void reloadJwtSecret(Context ctx) {
+        AppConfig.load();
+        try {
+            JwtUtil.reload(AppConfig.get("DEFAULT_JWT_SECRET", null));
+        } catch (IllegalArgumentException e) {
+            ctx.status(HttpStatus.BAD_REQUEST).json(new ErrorResponse(e.getMessage()));
+            return;
+        }
+        ctx.status(HttpStatus.NO_CONTENT);
+    }
+
+    @OpenApi(
+        path = "/api/admin/auth/hashing",
+        methods = {HttpMethod.GET},
+        summary = "Password hashing pool occupancy and latency",
+        tags = {"Admin"},
+        responses = {
+            @OpenApiResponse(status = "200", content = {@OpenApiContent(from = HashingExecutor.Stats.class)})
+        }
+    )
+    private void hashingStats(Context ctx) {
+        ctx.json(authService.hashingStats());
+    }
+
     private void handleValidationException(ValidationException exception, Context ctx) {
         ctx.status(HttpStatus.BAD_REQUEST).json(toErrorResponse(exception));
     }
@@ -153,9 +223,20 @@ public final class AuthController {
     }
 
     private void handleRepositoryException(UserRepository.RepositoryException exception, Context ctx) {
+        if (exception.getCause() instanceof SQLTransientConnectionException) {
+            // no database connection within the acquire timeout: shed load rather than report a failure
+            ctx.header(Header.RETRY_AFTER, "1");
+            ctx.status(HttpStatus.SERVICE_UNAVAILABLE).json(toErrorResponse(exception));
+            return;
+        }
         ctx.status(HttpStatus.INTERNAL_SERVER_ERROR).json(toErrorResponse(exception));
     }
 
+    private void handleSaturatedException(HashingExecutor.SaturatedException exception, Context ctx) {
+        ctx.header(Header.RETRY_AFTER, "1");
+        ctx.status(HttpStatus.SERVICE_UNAVAILABLE).json(toErrorResponse(exception));
+    }
+
     private AuthenticatedUser toAuthenticatedUser(UserResponse user) {
         return new AuthenticatedUser(user.getId(), user.getUsername(), user.getRole());
     }
@@ -0,0 +1,140 @@
+package it.jaiki.controller;
+
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
+import it.jaiki.service.ProductService;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Helpers for HTTP conditional GET (RFC 9110 section 13).
+ */
+final class ConditionalRequests {
+
+    private ConditionalRequests() {
+    }
+
+    /**
+     * Writes the validators and answers 304 when the client's copy is current.
+     *
+     * @return {@code true} if the response is complete (304) and no body must be written
+     */
+    static boolean notModified(Context ctx, String etag, OffsetDateTime lastModified) {
+        return notModified(ctx, etag, List.of(etag), lastModified);
+    }
+
+    /**
+     * Like {@link #notModified(Context, String, OffsetDateTime)} for a resource with several
+     * current representations: writes {@code etag}, the selected one's, and answers 304 when the
+     * client holds any of {@code currentEtags}.
+     */
+    static boolean notModified(Context ctx, String etag, List<String> currentEtags, OffsetDateTime lastModified) {
+        ctx.header(Header.ETAG, etag);
+        if (lastModified != null) {
+            ctx.header(Header.LAST_MODIFIED, DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                lastModified.withOffsetSameInstant(ZoneOffset.UTC).truncatedTo(ChronoUnit.SECONDS)));
+        }
+
+        String ifNoneMatch = ctx.header(Header.IF_NONE_MATCH);
+        boolean fresh;
+        if (ifNoneMatch != null) {
+            // If-None-Match takes precedence over If-Modified-Since
+            fresh = matchesAny(ifNoneMatch, currentEtags);
+        } else {
+            fresh = lastModified != null && notModifiedSince(ctx.header(Header.IF_MODIFIED_SINCE), lastModified);
+        }
+
+        if (fresh) {
+            ctx.status(HttpStatus.NOT_MODIFIED);
+        }
+        return fresh;
+    }
+
+    static String productEtag(long id, long version) {
+        return strongEtag(id + "-v" + version);
+    }
+
+    /**
+     * Reads the {@code If-Match} precondition on product {@code id}; {@code null} when the header
+     * is absent. {@code *} accepts any version of an existing product. Other tags contribute the
+     * version they name when they are strong ETags of this product; weak, foreign or malformed
+     * tags can never match, so a header made only of those fails the precondition.
+     */
+    static ProductService.IfMatch ifMatch(Context ctx, long id) {
+        String header = ctx.header(Header.IF_MATCH);
+        if (header == null || header.isBlank()) {
+            return null;
+        }
+        String prefix = "\"" + id + "-v";
+        Set<Long> versions = new HashSet<>();
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return new ProductService.IfMatch(true, Set.of());
+            }
+            // If-Match uses strong comparison, so weak tags never match
+            if (!tag.startsWith(prefix) || !tag.endsWith("\"") || tag.length() <= prefix.length()) {
+                continue;
+            }
+            try {
+                versions.add(Long.parseLong(tag.substring(prefix.length(), tag.length() - 1)));
+            } catch (NumberFormatException exception) {
+                // not a tag this server issued
+            }
+        }
+        return new ProductService.IfMatch(false, Set.copyOf(versions));
+    }
+
+    static String strongEtag(String value) {
+        return "\"" + value + "\"";
+    }
+
+    /**
+     * For responses whose bytes are not fixed by this code, e.g. bodies that Javalin may compress.
+     */
+    static String weakEtag(String value) {
+        return "W/" + strongEtag(value);
+    }
+
+    private static boolean matchesAny(String ifNoneMatch, List<String> etags) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals("*")) {
+                return true;
+            }
+            // If-None-Match uses the weak comparison function
+            String opaque = stripWeak(trimmed);
+            for (String etag : etags) {
+                if (stripWeak(etag).equals(opaque)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    private static boolean notModifiedSince(String header, OffsetDateTime lastModified) {
+        if (header == null) {
+            return false;
+        }
+        try {
+            ZonedDateTime since = ZonedDateTime.parse(header, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return !lastModified.truncatedTo(ChronoUnit.SECONDS).toInstant().isAfter(since.toInstant());
+        } catch (DateTimeParseException exception) {
+            return false;
+        }
+    }
+}
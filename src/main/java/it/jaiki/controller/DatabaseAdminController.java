@@ -0,0 +1,80 @@
+package it.jaiki.controller;
+
+import it.jaiki.db.TracingDataSource;
+import it.jaiki.model.response.StatementTraceResponse;
+import it.jaiki.security.Role;
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+import io.javalin.openapi.HttpMethod;
+import io.javalin.openapi.OpenApi;
+import io.javalin.openapi.OpenApiContent;
+import io.javalin.openapi.OpenApiParam;
+import io.javalin.openapi.OpenApiResponse;
+
+import java.util.Locale;
+
+/**
+ * Exposes admin routes for inspecting database statement tracing.
+ */
+public final class DatabaseAdminController {
+
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 500;
+
+    private final TracingDataSource tracingDataSource;
+
+    public DatabaseAdminController(TracingDataSource tracingDataSource) {
+        this.tracingDataSource = tracingDataSource;
+    }
+
+    public void registerRoutes(Javalin app) {
+        app.get("/api/admin/db/statements", this::statements, Role.ADMIN);
+        app.delete("/api/admin/db/statements", this::resetStatements, Role.ADMIN);
+    }
+
+    @OpenApi(
+        path = "/api/admin/db/statements",
+        methods = {HttpMethod.GET},
+        summary = "Slowest statement shapes and connection hold times",
+        tags = {"Admin"},
+        queryParams = {
+            @OpenApiParam(name = "limit", type = Integer.class, description = "Number of shapes to return (1-500, default 20)"),
+            @OpenApiParam(name = "order", description = "total (default), mean, max or count")
+        },
+        responses = {
+            @OpenApiResponse(status = "200", content = {@OpenApiContent(from = StatementTraceResponse.class)}),
+            @OpenApiResponse(status = "400", description = "Invalid limit or order", content = {@OpenApiContent(from = ErrorResponse.class)})
+        }
+    )
+    public void statements(Context ctx) {
+        int limit = ctx.queryParamAsClass("limit", Integer.class)
+            .check(value -> value >= 1 && value <= MAX_LIMIT, "Limit must be between 1 and %d".formatted(MAX_LIMIT))
+            .getOrDefault(DEFAULT_LIMIT);
+        String requestedOrder = ctx.queryParam("order");
+        TracingDataSource.Order order;
+        try {
+            order = requestedOrder == null
+                ? TracingDataSource.Order.TOTAL
+                : TracingDataSource.Order.valueOf(requestedOrder.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException exception) {
+            ctx.status(HttpStatus.BAD_REQUEST).json(new ErrorResponse("Unsupported order '%s'".formatted(requestedOrder)));
+            return;
+        }
+        ctx.json(new StatementTraceResponse(tracingDataSource.summary(), tracingDataSource.topStatements(limit, order)));
+    }
+
+    @OpenApi(
+        path = "/api/admin/db/statements",
+        methods = {HttpMethod.DELETE},
+        summary = "Reset statement and connection hold statistics",
+        tags = {"Admin"},
+        responses = {
+            @OpenApiResponse(status = "204", description = "Statistics cleared")
+        }
+    )
+    public void resetStatements(Context ctx) {
+        tracingDataSource.reset();
+        ctx.status(HttpStatus.NO_CONTENT);
+    }
+}
@@ -1,13 +1,26 @@
 package it.jaiki.controller;
 
+import it.jaiki.cache.CacheStats;
+import it.jaiki.cache.ProductResponseCache;
+import it.jaiki.cache.RequestCoalescer;
 import it.jaiki.model.Product;
+import it.jaiki.model.request.ProductBatchDeleteRequest;
+import it.jaiki.model.request.ProductBatchUpdateItem;
 import it.jaiki.model.request.ProductCreateRequest;
+import it.jaiki.model.request.ProductLookupRequest;
 import it.jaiki.model.request.ProductUpdateRequest;
+import it.jaiki.model.response.ProductBatchResponse;
+import it.jaiki.model.response.ProductLookupResponse;
+import it.jaiki.model.response.ProductPageResponse;
 import it.jaiki.repository.ProductRepository;
 import it.jaiki.security.Role;
+import it.jaiki.service.ProductIndex;
 import it.jaiki.service.ProductService;
+import it.jaiki.service.ProductWriteQueue;
 import io.javalin.Javalin;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
 import io.javalin.http.HttpStatus;
 import io.javalin.openapi.HttpMethod;
 import io.javalin.openapi.OpenApi;
@@ -18,7 +31,11 @@ import io.javalin.openapi.OpenApiResponse;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.sql.SQLTransientConnectionException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Exposes HTTP routes for product management.
@@ -26,39 +43,172 @@ import java.util.Optional;
 public final class ProductController {
 
     private final ProductService productService;
+    private final ProductResponseCache responses;
+    private final ResponseCompression compression;
 
-    public ProductController(ProductService productService) {
+    public ProductController(ProductService productService, ProductResponseCache responses, ResponseCompression compression) {
         this.productService = productService;
+        this.responses = responses;
+        this.compression = compression;
     }
 
     public void registerRoutes(Javalin app) {
     // Public reads
     app.get("/api/products", this::listProducts, Role.PUBLIC);
+    app.get("/api/products/search", this::searchProducts, Role.PUBLIC);
+    app.post("/api/products/lookup", this::lookupProducts, Role.PUBLIC);
     app.get("/api/products/{id}", this::getProduct, Role.PUBLIC);
     // Authenticated users and admins can create/update
     app.post("/api/products", this::createProduct, Role.USER, Role.ADMIN);
+    app.post("/api/products/batch", this::createProducts, Role.USER, Role.ADMIN);
+    app.put("/api/products/batch", this::updateProducts, Role.USER, Role.ADMIN);
     app.put("/api/products/{id}", this::updateProduct, Role.USER, Role.ADMIN);
     // Only admins can delete
+    app.post("/api/products/batch/delete", this::deleteProducts, Role.ADMIN);
     app.delete("/api/products/{id}", this::deleteProduct, Role.ADMIN);
+    app.get("/api/admin/cache/products", this::cacheStats, Role.ADMIN);
+    app.get("/api/admin/cache/product-index", this::indexStats, Role.ADMIN);
+    app.get("/api/admin/cache/product-json", this::responseCacheStats, Role.ADMIN);
+    app.get("/api/admin/cache/compressed-responses", this::compressionStats, Role.ADMIN);
+    app.get("/api/admin/cache/coalescing", this::coalescingStats, Role.ADMIN);
+    app.get("/api/admin/products/write-queue", this::writeQueueStats, Role.ADMIN);
         app.exception(ProductService.ValidationException.class, this::handleValidationException);
+        app.exception(ProductService.VersionConflictException.class, this::handleVersionConflictException);
         app.exception(ProductRepository.RepositoryException.class, this::handleRepositoryException);
+        app.exception(ProductWriteQueue.SaturatedException.class, this::handleSaturatedException);
     }
 
     @OpenApi(
         path = "/api/products",
         methods = {HttpMethod.GET},
-        summary = "List all products",
+        summary = "List products",
+        description = "Without parameters the full catalog is returned. Passing `limit` and/or `after` switches to "
+            + "keyset pagination; `stream=true` streams the full catalog from a database cursor. `ids` loads the "
+            + "listed products in one query instead (see POST /api/products/lookup for long lists).",
         tags = {"Products"},
+        queryParams = {
+            @OpenApiParam(name = "limit", type = Integer.class, description = "Page size (1-500, default 50)"),
+            @OpenApiParam(name = "after", description = "Opaque cursor returned as nextCursor by the previous page"),
+            @OpenApiParam(name = "stream", type = Boolean.class, description = "Stream the full catalog in constant memory"),
+            @OpenApiParam(name = "ids", description = "Comma-separated product ids (at most 500) to load in request order")
+        },
         responses = {
             @OpenApiResponse(
                 status = "200",
-                description = "Collection of persisted products",
-                content = {@OpenApiContent(from = Product[].class)}
-            )
+                description = "Collection of persisted products, a page of products when limit or after is given, "
+                    + "or the requested products and missing ids when ids is given",
+                content = {
+                    @OpenApiContent(from = Product[].class),
+                    @OpenApiContent(from = ProductPageResponse.class),
+                    @OpenApiContent(from = ProductLookupResponse.class)
+                }
+            ),
+            @OpenApiResponse(status = "304", description = "Collection unchanged since the supplied validator"),
+            @OpenApiResponse(status = "400", description = "Invalid limit, cursor or ids", content = {@OpenApiContent(from = ErrorResponse.class)})
         }
     )
     public void listProducts(Context ctx) {
-        ctx.json(productService.listProducts());
+        String ids = ctx.queryParam("ids");
+        if (ids != null) {
+            ctx.json(productService.lookupProducts(ids));
+            return;
+        }
+
+        // the collection version validates every listing variant without touching product rows
+        ProductRepository.CollectionVersion version = productService.collectionVersion();
+        String collectionTag = "c" + version.changeCount();
+
+        if (Boolean.parseBoolean(ctx.queryParam("stream"))) {
+            // Javalin may compress the stream, so its bytes are only weakly identified
+            if (ConditionalRequests.notModified(ctx, ConditionalRequests.weakEtag(collectionTag), version.changedAt())) {
+                return;
+            }
+            try (Stream<Product> products = productService.streamProducts()) {
+                ctx.writeJsonStream(products);
+            }
+            return;
+        }
+
+        // every content coding is its own representation with its own strong validator
+        ResponseCompression.Encoding encoding = compression.negotiate(ctx);
+        String etag = ConditionalRequests.strongEtag(ResponseCompression.etagValue(collectionTag, encoding));
+        List<String> currentEtags = ResponseCompression.etagValues(collectionTag).stream().map(ConditionalRequests::strongEtag).toList();
+        if (ConditionalRequests.notModified(ctx, etag, currentEtags, version.changedAt())) {
+            return;
+        }
+
+        String after = ctx.queryParam("after");
+        String limit = ctx.queryParam("limit");
+        if (after != null || limit != null) {
+            Integer pageSize = limit == null ? null : ctx.queryParamAsClass("limit", Integer.class).get();
+            byte[] page = responses.page(version.changeCount(), after, pageSize, () -> productService.listProducts(after, pageSize));
+            compression.writeJson(ctx, collectionTag + " after=" + after + " limit=" + pageSize, page, encoding);
+            return;
+        }
+
+        compression.writeJson(ctx, collectionTag, responses.collection(version.changeCount(), productService::listProducts), encoding);
+    }
+
+    @OpenApi(
+        path = "/api/products/search",
+        methods = {HttpMethod.GET},
+        summary = "Search products",
+        description = "Filters by name and price range and pages through the matches with a keyset cursor. "
+            + "Every filter and order is served by an index.",
+        tags = {"Products"},
+        queryParams = {
+            @OpenApiParam(name = "q", description = "Text matched against the product name"),
+            @OpenApiParam(name = "match", description = "prefix (default), contains (at least 3 characters) or fulltext (web search syntax)"),
+            @OpenApiParam(name = "minPrice", description = "Lowest price, inclusive"),
+            @OpenApiParam(name = "maxPrice", description = "Highest price, inclusive"),
+            @OpenApiParam(name = "sort", description = "id (default), name, price or price_desc"),
+            @OpenApiParam(name = "limit", type = Integer.class, description = "Page size (1-500, default 50)"),
+            @OpenApiParam(name = "after", description = "Opaque cursor returned as nextCursor by the previous page with the same sort")
+        },
+        responses = {
+            @OpenApiResponse(status = "200", content = {@OpenApiContent(from = ProductPageResponse.class)}),
+            @OpenApiResponse(status = "304", description = "Collection unchanged since the supplied validator"),
+            @OpenApiResponse(status = "400", description = "Invalid filter, sort, limit or cursor", content = {@OpenApiContent(from = ErrorResponse.class)})
+        }
+    )
+    public void searchProducts(Context ctx) {
+        // validate first: an invalid request is a 400 even when the collection is unchanged
+        Integer limit = ctx.queryParam("limit") == null ? null : ctx.queryParamAsClass("limit", Integer.class).get();
+        ProductService.SearchQuery query = productService.parseSearch(
+            ctx.queryParam("q"),
+            ctx.queryParam("match"),
+            ctx.queryParam("minPrice"),
+            ctx.queryParam("maxPrice"),
+            ctx.queryParam("sort"),
+            ctx.queryParam("after"),
+            limit
+        );
+        // any change to the collection may change the matches, so searches share the collection
+        // validator; weak, since Javalin may compress the body
+        ProductRepository.CollectionVersion version = productService.collectionVersion();
+        String etag = ConditionalRequests.weakEtag("c" + version.changeCount());
+        if (ConditionalRequests.notModified(ctx, etag, version.changedAt())) {
+            return;
+        }
+        ctx.json(productService.searchProducts(query));
+    }
+
+    @OpenApi(
+        path = "/api/products/lookup",
+        methods = {HttpMethod.POST},
+        summary = "Retrieve several products by id",
+        description = "Loads up to 500 products with a single query. Items follow the request order without duplicates; "
+            + "ids that do not exist are listed in missing.",
+        tags = {"Products"},
+        requestBody = @OpenApiRequestBody(content = {@OpenApiContent(from = ProductLookupRequest.class)}),
+        responses = {
+            @OpenApiResponse(status = "200", content = {@OpenApiContent(from = ProductLookupResponse.class)}),
+            @OpenApiResponse(status = "400", description = "Empty or oversized id list", content = {@OpenApiContent(from = ErrorResponse.class)})
+        }
+    )
+    public void lookupProducts(Context ctx) {
+        ProductLookupRequest request = ctx.bodyAsClass(ProductLookupRequest.class);
+        ctx.json(productService.lookupProducts(request.getIds()));
     }
 
     @OpenApi(
@@ -71,6 +221,7 @@ public final class ProductController {
         },
         responses = {
             @OpenApiResponse(status = "200", content = {@OpenApiContent(from = Product.class)}),
+            @OpenApiResponse(status = "304", description = "Product unchanged since the supplied validator"),
             @OpenApiResponse(status = "404", description = "Product not found", content = {@OpenApiContent(from = ErrorResponse.class)})
         }
     )
@@ -81,7 +232,10 @@ public final class ProductController {
             ctx.status(HttpStatus.NOT_FOUND).json(new ErrorResponse("Product %d not found".formatted(id)));
             return;
         }
-        ctx.json(product.get());
+        if (ConditionalRequests.notModified(ctx, productEtag(product.get()), product.get().getUpdatedAt())) {
+            return;
+        }
+        writeJson(ctx, responses.product(product.get()));
     }
 
     @OpenApi(
@@ -109,21 +263,27 @@ public final class ProductController {
         pathParams = {
             @OpenApiParam(name = "id", type = Long.class, description = "Product identifier")
         },
+        headers = {
+            @OpenApiParam(name = "If-Match", description = "ETag from a previous read; the update fails with 412 if the product changed since or no longer exists")
+        },
         requestBody = @OpenApiRequestBody(content = {@OpenApiContent(from = ProductUpdateRequest.class)}),
         responses = {
             @OpenApiResponse(status = "200", content = {@OpenApiContent(from = Product.class)}),
             @OpenApiResponse(status = "400", description = "Validation error", content = {@OpenApiContent(from = ErrorResponse.class)}),
-            @OpenApiResponse(status = "404", description = "Product not found", content = {@OpenApiContent(from = ErrorResponse.class)})
+            @OpenApiResponse(status = "404", description = "Product not found", content = {@OpenApiContent(from = ErrorResponse.class)}),
+            @OpenApiResponse(status = "412", description = "If-Match given and the product changed or does not exist", content = {@OpenApiContent(from = ErrorResponse.class)}),
+            @OpenApiResponse(status = "503", description = "Update queue is full, retry later", content = {@OpenApiContent(from = ErrorResponse.class)})
         }
     )
     public void updateProduct(Context ctx) {
         long id = ctx.pathParamAsClass("id", Long.class).get();
         ProductUpdateRequest request = ctx.bodyAsClass(ProductUpdateRequest.class);
-        Optional<Product> updated = productService.updateProduct(id, request);
+        Optional<Product> updated = productService.updateProduct(id, request, ConditionalRequests.ifMatch(ctx, id));
         if (updated.isEmpty()) {
             ctx.status(HttpStatus.NOT_FOUND).json(new ErrorResponse("Product %d not found".formatted(id)));
             return;
         }
+        ctx.header(Header.ETAG, productEtag(updated.get()));
         ctx.json(updated.get());
     }
 
@@ -135,14 +295,18 @@ public final class ProductController {
         pathParams = {
             @OpenApiParam(name = "id", type = Long.class, description = "Product identifier")
         },
+        headers = {
+            @OpenApiParam(name = "If-Match", description = "ETag from a previous read; the delete fails with 412 if the product changed since or no longer exists")
+        },
         responses = {
             @OpenApiResponse(status = "204", description = "Product deleted"),
-            @OpenApiResponse(status = "404", description = "Product not found", content = {@OpenApiContent(from = ErrorResponse.class)})
+            @OpenApiResponse(status = "404", description = "Product not found", content = {@OpenApiContent(from = ErrorResponse.class)}),
+            @OpenApiResponse(status = "412", description = "If-Match given and the product changed or does not exist", content = {@OpenApiContent(from = ErrorResponse.class)})
         }
     )
     public void deleteProduct(Context ctx) {
         long id = ctx.pathParamAsClass("id", Long.class).get();
-        boolean deleted = productService.deleteProduct(id);
+        boolean deleted = productService.deleteProduct(id, ConditionalRequests.ifMatch(ctx, id));
         if (!deleted) {
             ctx.status(HttpStatus.NOT_FOUND).json(new ErrorResponse("Product %d not found".formatted(id)));
             return;
@@ -150,14 +314,185 @@ public final class ProductController {
         ctx.status(HttpStatus.NO_CONTENT);
     }
 
+    @OpenApi(
+        path = "/api/products/batch",
+        methods = {HttpMethod.POST},
+        summary = "Create many products in one transaction",
+        description = "Invalid entries are reported per item and skipped; valid entries are inserted together.",
+        tags = {"Products"},
+        requestBody = @OpenApiRequestBody(content = {@OpenApiContent(from = ProductCreateRequest[].class)}),
+        responses = {
+            @OpenApiResponse(status = "200", content = {@OpenApiContent(from = ProductBatchResponse.class)}),
+            @OpenApiResponse(status = "400", description = "Empty or oversized batch", content = {@OpenApiContent(from = ErrorResponse.class)})
+        }
+    )
+    public void createProducts(Context ctx) {
+        ProductCreateRequest[] requests = ctx.bodyAsClass(ProductCreateRequest[].class);
+        ctx.json(productService.createProducts(Arrays.asList(requests)));
+    }
+
+    @OpenApi(
+        path = "/api/products/batch",
+        methods = {HttpMethod.PUT},
+        summary = "Update many products in one transaction",
+        description = "Invalid or unknown entries are reported per item; valid entries are applied together.",
+        tags = {"Products"},
+        requestBody = @OpenApiRequestBody(content = {@OpenApiContent(from = ProductBatchUpdateItem[].class)}),
+        responses = {
+            @OpenApiResponse(status = "200", content = {@OpenApiContent(from = ProductBatchResponse.class)}),
+            @OpenApiResponse(status = "400", description = "Empty or oversized batch", content = {@OpenApiContent(from = ErrorResponse.class)})
+        }
+    )
+    public void updateProducts(Context ctx) {
+        ProductBatchUpdateItem[] items = ctx.bodyAsClass(ProductBatchUpdateItem[].class);
+        ctx.json(productService.updateProducts(Arrays.asList(items)));
+    }
+
+    @OpenApi(
+        path = "/api/products/batch/delete",
+        methods = {HttpMethod.POST},
+        summary = "Delete many products in one transaction",
+        tags = {"Products"},
+        requestBody = @OpenApiRequestBody(content = {@OpenApiContent(from = ProductBatchDeleteRequest.class)}),
+        responses = {
+            @OpenApiResponse(status = "200", content = {@OpenApiContent(from = ProductBatchResponse.class)}),
+            @OpenApiResponse(status = "400", description = "Empty or oversized batch", content = {@OpenApiContent(from = ErrorResponse.class)})
+        }
+    )
+    public void deleteProducts(Context ctx) {
+        ProductBatchDeleteRequest request = ctx.bodyAsClass(ProductBatchDeleteRequest.class);
+        ctx.json(productService.deleteProducts(request.getIds()));
+    }
+
+    @OpenApi(
+        path = "/api/admin/cache/products",
+        methods = {HttpMethod.GET},
+        summary = "Product cache counters",
+        tags = {"Admin"},
+        responses = {
+            @OpenApiResponse(status = "200", content = {@OpenApiContent(from = CacheStats.class)})
+        }
+    )
+    public void cacheStats(Context ctx) {
+        ctx.json(productService.cacheStats());
+    }
+
+    @OpenApi(
+        path = "/api/admin/cache/product-index",
+        methods = {HttpMethod.GET},
+        summary = "In-memory product index counters",
+        tags = {"Admin"},
+        responses = {
+            @OpenApiResponse(status = "200", content = {@OpenApiContent(from = ProductIndex.Stats.class)}),
+            @OpenApiResponse(status = "404", description = "The index is disabled", content = {@OpenApiContent(from = ErrorResponse.class)})
+        }
+    )
+    public void indexStats(Context ctx) {
+        Optional<ProductIndex.Stats> stats = productService.indexStats();
+        if (stats.isEmpty()) {
+            ctx.status(HttpStatus.NOT_FOUND).json(new ErrorResponse("Product index is disabled"));
+            return;
+        }
+        ctx.json(stats.get());
+    }
+
+    @OpenApi(
+        path = "/api/admin/cache/product-json",
+        methods = {HttpMethod.GET},
+        summary = "Serialized product response cache counters",
+        tags = {"Admin"},
+        responses = {
+            @OpenApiResponse(status = "200", content = {@OpenApiContent(from = CacheStats[].class)})
+        }
+    )
+    public void responseCacheStats(Context ctx) {
+        ctx.json(responses.stats());
+    }
+
+    @OpenApi(
+        path = "/api/admin/cache/compressed-responses",
+        methods = {HttpMethod.GET},
+        summary = "Pre-compressed collection response counters",
+        tags = {"Admin"},
+        responses = {
+            @OpenApiResponse(status = "200", content = {@OpenApiContent(from = CacheStats.class)})
+        }
+    )
+    public void compressionStats(Context ctx) {
+        ctx.json(compression.stats());
+    }
+
+    @OpenApi(
+        path = "/api/admin/cache/coalescing",
+        methods = {HttpMethod.GET},
+        summary = "Merged concurrent product read counters",
+        description = "Collection version, list, page and search reads that joined an identical query already in flight. "
+            + "Merged by-id reads are reported as coalescedLoads of the product cache.",
+        tags = {"Admin"},
+        responses = {
+            @OpenApiResponse(status = "200", content = {@OpenApiContent(from = RequestCoalescer.Stats[].class)})
+        }
+    )
+    public void coalescingStats(Context ctx) {
+        ctx.json(productService.coalescingStats());
+    }
+
+    @OpenApi(
+        path = "/api/admin/products/write-queue",
+        methods = {HttpMethod.GET},
+        summary = "Group-commit update queue counters",
+        tags = {"Admin"},
+        responses = {
+            @OpenApiResponse(status = "200", content = {@OpenApiContent(from = ProductWriteQueue.Stats.class)}),
+            @OpenApiResponse(status = "404", description = "The write queue is disabled", content = {@OpenApiContent(from = ErrorResponse.class)})
+        }
+    )
+    public void writeQueueStats(Context ctx) {
+        Optional<ProductWriteQueue.Stats> stats = productService.writeQueueStats();
+        if (stats.isEmpty()) {
+            ctx.status(HttpStatus.NOT_FOUND).json(new ErrorResponse("Product write queue is disabled"));
+            return;
+        }
+        ctx.json(stats.get());
+    }
+
+    /**
+     * Writes an already serialized body, skipping the JSON mapper.
+     */
+    private void writeJson(Context ctx, byte[] json) {
+        ctx.contentType(ContentType.APPLICATION_JSON).result(json);
+    }
+
+    private String productEtag(Product product) {
+        return ConditionalRequests.productEtag(product.getId(), product.getVersion());
+    }
+
+    private void handleVersionConflictException(ProductService.VersionConflictException exception, Context ctx) {
+        if (exception.getCurrent() != null) {
+            ctx.header(Header.ETAG, productEtag(exception.getCurrent()));
+        }
+        ctx.status(HttpStatus.PRECONDITION_FAILED).json(toErrorResponse(exception));
+    }
+
     private void handleValidationException(ProductService.ValidationException exception, Context ctx) {
         ctx.status(HttpStatus.BAD_REQUEST).json(toErrorResponse(exception));
     }
 
     private void handleRepositoryException(ProductRepository.RepositoryException exception, Context ctx) {
+        if (exception.getCause() instanceof SQLTransientConnectionException) {
+            // no database connection within the acquire timeout: shed load rather than report a failure
+            ctx.header(Header.RETRY_AFTER, "1");
+            ctx.status(HttpStatus.SERVICE_UNAVAILABLE).json(toErrorResponse(exception));
+            return;
+        }
         ctx.status(HttpStatus.INTERNAL_SERVER_ERROR).json(toErrorResponse(exception));
     }
 
+    private void handleSaturatedException(ProductWriteQueue.SaturatedException exception, Context ctx) {
+        ctx.header(Header.RETRY_AFTER, "1");
+        ctx.status(HttpStatus.SERVICE_UNAVAILABLE).json(toErrorResponse(exception));
+    }
+
     private ErrorResponse toErrorResponse(Exception exception) {
         if (it.jaiki.config.AppConfig.shouldExposeErrorDetails()) {
             return new ErrorResponse(exception.getMessage(), stackTrace(exception));
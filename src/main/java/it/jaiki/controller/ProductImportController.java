@@ -0,0 +1,90 @@
+package it.jaiki.controller;
+
+import it.jaiki.model.response.ProductImportResponse;
+import it.jaiki.security.Role;
+import it.jaiki.service.ProductImportService;
+import it.jaiki.service.ProductImportService.Format;
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.openapi.HttpMethod;
+import io.javalin.openapi.OpenApi;
+import io.javalin.openapi.OpenApiContent;
+import io.javalin.openapi.OpenApiParam;
+import io.javalin.openapi.OpenApiRequestBody;
+import io.javalin.openapi.OpenApiResponse;
+
+/**
+ * Exposes admin routes for COPY-based bulk import and export of products.
+ */
+public final class ProductImportController {
+
+    private final ProductImportService importService;
+
+    public ProductImportController(ProductImportService importService) {
+        this.importService = importService;
+    }
+
+    public void registerRoutes(Javalin app) {
+        app.post("/api/admin/products/import", this::importProducts, Role.ADMIN);
+        app.get("/api/admin/products/export", this::exportProducts, Role.ADMIN);
+    }
+
+    @OpenApi(
+        path = "/api/admin/products/import",
+        methods = {HttpMethod.POST},
+        summary = "Bulk import products with COPY",
+        description = "Streams `name,price` CSV (optional header) or NDJSON objects into the products table. "
+            + "Invalid lines are skipped and reported; valid lines are loaded in one statement.",
+        tags = {"Admin"},
+        queryParams = {
+            @OpenApiParam(name = "format", description = "csv (default) or ndjson")
+        },
+        requestBody = @OpenApiRequestBody(content = {
+            @OpenApiContent(type = "text/csv", from = String.class),
+            @OpenApiContent(type = "application/x-ndjson", from = String.class)
+        }),
+        responses = {
+            @OpenApiResponse(status = "200", content = {@OpenApiContent(from = ProductImportResponse.class)}),
+            @OpenApiResponse(status = "400", description = "Unsupported format", content = {@OpenApiContent(from = ErrorResponse.class)})
+        }
+    )
+    public void importProducts(Context ctx) {
+        Format format = resolveFormat(ctx);
+        ctx.json(importService.importProducts(ctx.bodyInputStream(), format));
+    }
+
+    @OpenApi(
+        path = "/api/admin/products/export",
+        methods = {HttpMethod.GET},
+        summary = "Bulk export products with COPY",
+        tags = {"Admin"},
+        queryParams = {
+            @OpenApiParam(name = "format", description = "csv (default) or ndjson")
+        },
+        responses = {
+            @OpenApiResponse(status = "200", content = {
+                @OpenApiContent(type = "text/csv", from = String.class),
+                @OpenApiContent(type = "application/x-ndjson", from = String.class)
+            }),
+            @OpenApiResponse(status = "400", description = "Unsupported format", content = {@OpenApiContent(from = ErrorResponse.class)})
+        }
+    )
+    public void exportProducts(Context ctx) {
+        Format format = Format.parse(ctx.queryParam("format"));
+        ctx.contentType(format.contentType());
+        ctx.header(Header.CONTENT_DISPOSITION, "attachment; filename=\"products.%s\"".formatted(format.name().toLowerCase()));
+        importService.exportProducts(ctx.outputStream(), format);
+    }
+
+    private Format resolveFormat(Context ctx) {
+        String requested = ctx.queryParam("format");
+        if (requested == null) {
+            String contentType = ctx.contentType();
+            if (contentType != null && (contentType.startsWith("application/x-ndjson") || contentType.startsWith("application/jsonl"))) {
+                return Format.NDJSON;
+            }
+        }
+        return Format.parse(requested);
+    }
+}
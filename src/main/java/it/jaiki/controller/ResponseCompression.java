@@ -0,0 +1,229 @@
+package it.jaiki.controller;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.encoder.Encoder;
+import com.github.luben.zstd.Zstd;
+import io.javalin.http.ContentType;
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import it.jaiki.cache.BoundedCache;
+import it.jaiki.cache.CacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Negotiates {@code Content-Encoding} for cacheable JSON bodies and keeps their compressed variants.
+ *
+ * <p>Variants are stored under the caller's key (the response ETag plus whatever else selects the
+ * body) and the encoding, and compressed once per collection version at moderate levels: the first
+ * request after a write pays for it on its own thread, so the levels trade a little ratio for
+ * bounded latency. Bodies below {@code minSize} and clients that accept none of the available
+ * encodings get the identity body. Responses written here carry their own encoding, so Javalin's
+ * dynamic compression leaves them alone.
+ *
+ * <p>Each content coding is a different representation, so callers negotiate first with
+ * {@link #negotiate(Context)} and give every encoding its own strong ETag with {@link #etagValue}.
+ */
+public final class ResponseCompression {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResponseCompression.class);
+
+    private final int minSize;
+    private final Set<Encoding> enabled;
+    private final BoundedCache<VariantKey, byte[]> variants;
+
+    public ResponseCompression(int minSize, int maxVariants, Duration ttl, Set<Encoding> enabled) {
+        this.minSize = minSize;
+        this.enabled = enabled.isEmpty() ? EnumSet.noneOf(Encoding.class) : EnumSet.copyOf(enabled);
+        this.variants = new BoundedCache<>("compressed-responses", maxVariants, variant -> ttl);
+    }
+
+    /**
+     * Encodings whose codec can be loaded on this platform; brotli and zstd need native libraries.
+     */
+    public static Set<Encoding> availableEncodings() {
+        Set<Encoding> available = EnumSet.of(Encoding.GZIP);
+        try {
+            Brotli4jLoader.ensureAvailability();
+            available.add(Encoding.BROTLI);
+        } catch (LinkageError | RuntimeException exception) {
+            LOGGER.warn("Brotli is unavailable, not offering it: {}", exception.getMessage());
+        }
+        try {
+            Zstd.compress(new byte[0]);
+            available.add(Encoding.ZSTD);
+        } catch (LinkageError | RuntimeException exception) {
+            LOGGER.warn("Zstandard is unavailable, not offering it: {}", exception.getMessage());
+        }
+        return available;
+    }
+
+    /**
+     * Picks the encoding for this request's response and marks the response as varying with
+     * {@code Accept-Encoding}; {@code null} means identity.
+     */
+    public Encoding negotiate(Context ctx) {
+        ctx.header(Header.VARY, Header.ACCEPT_ENCODING);
+        return negotiate(ctx.header(Header.ACCEPT_ENCODING));
+    }
+
+    /**
+     * The opaque ETag value of {@code value}'s representation in {@code encoding}. Bodies too
+     * small to compress are sent as identity under the same value, which is still unambiguous:
+     * the value always denotes the same bytes.
+     */
+    public static String etagValue(String value, Encoding encoding) {
+        return encoding == null ? value : value + "-" + encoding.token;
+    }
+
+    /**
+     * The ETag values of every representation of {@code value}; any of them is current.
+     */
+    public static List<String> etagValues(String value) {
+        List<String> values = new ArrayList<>(Encoding.values().length + 1);
+        values.add(value);
+        for (Encoding encoding : Encoding.values()) {
+            values.add(etagValue(value, encoding));
+        }
+        return values;
+    }
+
+    /**
+     * Writes {@code json} in the {@link #negotiate(Context) negotiated} encoding, reusing the
+     * variant stored under {@code key} when there is one.
+     *
+     * @param key identifies {@code json} exactly, e.g. its ETag; a changed body needs a new key
+     */
+    public void writeJson(Context ctx, String key, byte[] json, Encoding negotiated) {
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        Encoding encoding = json.length < minSize ? null : negotiated;
+        if (encoding == null) {
+            ctx.result(json);
+            return;
+        }
+        byte[] compressed = variants.get(new VariantKey(key, encoding), variant -> encoding.compress(json));
+        ctx.header(Header.CONTENT_ENCODING, encoding.token);
+        ctx.result(compressed);
+    }
+
+    public CacheStats stats() {
+        return variants.stats();
+    }
+
+    /**
+     * Picks the enabled encoding with the highest quality in {@code Accept-Encoding}; ties go to the
+     * better codec (zstd, then brotli, then gzip).
+     */
+    Encoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isBlank() || enabled.isEmpty()) {
+            return null;
+        }
+        Map<Encoding, Double> qualities = new EnumMap<>(Encoding.class);
+        Double wildcard = null;
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.split(";");
+            String coding = tokens[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1.0;
+            for (int index = 1; index < tokens.length; index++) {
+                String parameter = tokens[index].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException exception) {
+                        quality = 0.0;
+                    }
+                }
+            }
+            if ("*".equals(coding)) {
+                wildcard = quality;
+                continue;
+            }
+            Encoding encoding = Encoding.fromToken(coding);
+            if (encoding != null) {
+                qualities.merge(encoding, quality, Math::max);
+            }
+        }
+
+        Encoding best = null;
+        double bestQuality = 0.0;
+        for (Encoding encoding : Encoding.values()) {
+            if (!enabled.contains(encoding)) {
+                continue;
+            }
+            double quality = qualities.getOrDefault(encoding, wildcard == null ? 0.0 : wildcard);
+            if (quality > bestQuality) {
+                best = encoding;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Content codings, in order of preference, compressed at moderate levels (zstd 5, brotli 5,
+     * gzip's default 6).
+     */
+    public enum Encoding {
+        ZSTD("zstd") {
+            @Override
+            byte[] compress(byte[] body) {
+                return Zstd.compress(body, 5);
+            }
+        },
+        BROTLI("br") {
+            @Override
+            byte[] compress(byte[] body) {
+                try {
+                    return Encoder.compress(body, new Encoder.Parameters().setQuality(5));
+                } catch (IOException exception) {
+                    throw new UncheckedIOException("Unable to brotli-compress response", exception);
+                }
+            }
+        },
+        GZIP("gzip") {
+            @Override
+            byte[] compress(byte[] body) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+                try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                    gzip.write(body);
+                } catch (IOException exception) {
+                    throw new UncheckedIOException("Unable to gzip response", exception);
+                }
+                return out.toByteArray();
+            }
+        };
+
+        private final String token;
+
+        Encoding(String token) {
+            this.token = token;
+        }
+
+        abstract byte[] compress(byte[] body);
+
+        static Encoding fromToken(String token) {
+            return switch (token) {
+                case "zstd" -> ZSTD;
+                case "br" -> BROTLI;
+                case "gzip", "x-gzip" -> GZIP;
+                default -> null;
+            };
+        }
+    }
+
+    private record VariantKey(String key, Encoding encoding) {
+    }
+}
@@ -0,0 +1,135 @@
+package it.jaiki.db;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Delivers PostgreSQL {@code NOTIFY} payloads of one channel to a {@link Listener}, on a single
+ * daemon thread.
+ *
+ * <p>The feed holds a dedicated connection outside the pool, since it stays open for as long as
+ * the feed runs. When that connection fails, the feed reconnects after {@code retryInterval} and
+ * tells the listener that it resubscribed; notifications sent in between are lost, so the
+ * listener has to resynchronise. A listener that throws is treated like a connection failure.
+ */
+public final class ChangeFeed implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeFeed.class);
+    private static final Pattern CHANNEL_NAME = Pattern.compile("[a-z_][a-z0-9_]*");
+
+    private final String channel;
+    private final ConnectionOpener opener;
+    private final int pollMillis;
+    private final long retryMillis;
+    private final Listener listener;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public ChangeFeed(String channel, ConnectionOpener opener, Duration pollInterval, Duration retryInterval, Listener listener) {
+        if (!CHANNEL_NAME.matcher(channel).matches()) {
+            throw new IllegalArgumentException("Invalid channel name " + channel);
+        }
+        this.channel = channel;
+        this.opener = opener;
+        this.pollMillis = (int) Math.max(1, pollInterval.toMillis());
+        this.retryMillis = retryInterval.toMillis();
+        this.listener = listener;
+        this.thread = new Thread(this::run, "change-feed-" + channel);
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    private void run() {
+        while (running) {
+            try (Connection connection = opener.open()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                LOGGER.info("Listening for notifications on {}", channel);
+                listener.resubscribed();
+                while (running) {
+                    // blocks until a notification arrives or the poll interval elapses
+                    PGNotification[] notifications = pgConnection.getNotifications(pollMillis);
+                    if (notifications != null && notifications.length > 0) {
+                        List<String> payloads = new ArrayList<>(notifications.length);
+                        for (PGNotification notification : notifications) {
+                            payloads.add(notification.getParameter());
+                        }
+                        listener.notified(payloads);
+                    }
+                    listener.idle();
+                }
+            } catch (SQLException | RuntimeException exception) {
+                if (!running) {
+                    return;
+                }
+                listener.disconnected();
+                LOGGER.warn("Change feed on {} failed, reconnecting in {} ms: {}", channel, retryMillis, exception.getMessage());
+                try {
+                    Thread.sleep(retryMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(pollMillis + 1_000L);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Opens the feed's dedicated connection.
+     */
+    @FunctionalInterface
+    public interface ConnectionOpener {
+        Connection open() throws SQLException;
+    }
+
+    /**
+     * Receives the feed's events; all calls come from the feed thread, one at a time.
+     */
+    public interface Listener {
+
+        /**
+         * The feed (re)started listening; anything sent before may have been missed.
+         */
+        void resubscribed();
+
+        /**
+         * Payloads of the notifications received together, in commit order.
+         */
+        void notified(List<String> payloads);
+
+        /**
+         * Called after every wait for notifications, at least once per poll interval.
+         */
+        void idle();
+
+        /**
+         * The connection failed; notifications are missed until {@link #resubscribed()}.
+         */
+        void disconnected();
+    }
+}
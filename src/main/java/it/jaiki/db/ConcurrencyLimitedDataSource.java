@@ -0,0 +1,225 @@
+package it.jaiki.db;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Admits at most {@code permits} concurrent connection borrowers, in FIFO order.
+ *
+ * <p>With virtual threads thousands of requests can reach the pool at once. A fair semaphore in
+ * front of it makes them queue in arrival order and gives up after a bounded wait, instead of all
+ * of them racing inside the pool until its connection timeout.
+ */
+public final class ConcurrencyLimitedDataSource implements DataSource {
+
+    private final DataSource delegate;
+    private final ResizableSemaphore permits;
+    private volatile int maxPermits;
+    private final long acquireTimeoutNanos;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder totalAcquireNanos = new LongAdder();
+
+    public ConcurrencyLimitedDataSource(DataSource delegate, int permits, Duration acquireTimeout) {
+        if (permits < 1) {
+            throw new IllegalArgumentException("Concurrency limit must be positive");
+        }
+        this.delegate = delegate;
+        this.permits = new ResizableSemaphore(permits);
+        this.maxPermits = permits;
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long startedAt = System.nanoTime();
+        acquire();
+        try {
+            Connection connection = wrap(delegate.getConnection());
+            recordAcquire(startedAt);
+            return connection;
+        } catch (SQLException | RuntimeException exception) {
+            permits.release();
+            throw exception;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long startedAt = System.nanoTime();
+        acquire();
+        try {
+            Connection connection = wrap(delegate.getConnection(username, password));
+            recordAcquire(startedAt);
+            return connection;
+        } catch (SQLException | RuntimeException exception) {
+            permits.release();
+            throw exception;
+        }
+    }
+
+    public int availablePermits() {
+        return permits.availablePermits();
+    }
+
+    public int maxPermits() {
+        return maxPermits;
+    }
+
+    public int queueLength() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * Changes the limit at runtime. Shrinking does not affect borrowers that already hold a slot;
+     * new borrowers wait until enough of them have returned theirs.
+     */
+    public synchronized void resize(int newPermits) {
+        if (newPermits < 1) {
+            throw new IllegalArgumentException("Concurrency limit must be positive");
+        }
+        int delta = newPermits - maxPermits;
+        if (delta > 0) {
+            permits.release(delta);
+        } else if (delta < 0) {
+            permits.reducePermits(-delta);
+        }
+        maxPermits = newPermits;
+    }
+
+    /**
+     * Successful borrows so far.
+     */
+    public long acquisitions() {
+        return acquisitions.sum();
+    }
+
+    /**
+     * Total time successful borrowers spent waiting for a slot and a pooled connection.
+     */
+    public long totalAcquireNanos() {
+        return totalAcquireNanos.sum();
+    }
+
+    private void recordAcquire(long startedAt) {
+        acquisitions.increment();
+        totalAcquireNanos.add(System.nanoTime() - startedAt);
+    }
+
+    private void acquire() throws SQLException {
+        try {
+            if (!permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new SQLTransientConnectionException(
+                    "Timed out after %d ms waiting for a database connection slot (%d waiting)"
+                        .formatted(TimeUnit.NANOSECONDS.toMillis(acquireTimeoutNanos), permits.getQueueLength()));
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a database connection slot", exception);
+        }
+    }
+
+    private Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class<?>[]{Connection.class},
+            new ReleasingHandler(connection)
+        );
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return delegate.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        delegate.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        delegate.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return delegate.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return delegate.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate.isWrapperFor(iface);
+    }
+
+    /**
+     * Fair semaphore that exposes {@link Semaphore#reducePermits(int)} for {@link #resize(int)}.
+     */
+    private static final class ResizableSemaphore extends Semaphore {
+
+        private ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+    private final class ReleasingHandler implements InvocationHandler {
+
+        private final Connection target;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private ReleasingHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                try {
+                    target.close();
+                } finally {
+                    if (released.compareAndSet(false, true)) {
+                        permits.release();
+                    }
+                }
+                return null;
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException exception) {
+                throw exception.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package it.jaiki.db;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Periodically resizes the Hikari pool within fixed bounds, through its MXBeans.
+ *
+ * <p>Every interval it looks at the threads waiting for a connection (in the pool and in the
+ * admission queue) and the average time borrowers waited. The pool grows by a quarter when anyone
+ * waited or acquisition is slower than {@code targetAcquire}, and shrinks by one connection after
+ * {@code shrinkAfterIdleTicks} quiet intervals in which at most half the pool was busy. Every
+ * change is logged with the observations behind it.
+ */
+public final class PoolSizingAdvisor implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PoolSizingAdvisor.class);
+
+    private final HikariPoolMXBean pool;
+    private final HikariConfigMXBean poolConfig;
+    private final ConcurrencyLimitedDataSource admission;
+    private final IntConsumer onResize;
+    private final int minSize;
+    private final int maxSize;
+    private final long targetAcquireNanos;
+    private final int shrinkAfterIdleTicks;
+    private final ScheduledExecutorService scheduler;
+
+    private long lastAcquisitions;
+    private long lastAcquireNanos;
+    private int idleTicks;
+
+    /**
+     * @param onResize called with the new maximum after each change, e.g. to resize an admission limit
+     */
+    public PoolSizingAdvisor(HikariPoolMXBean pool, HikariConfigMXBean poolConfig, ConcurrencyLimitedDataSource admission,
+                             int minSize, int maxSize, Duration targetAcquire, int shrinkAfterIdleTicks,
+                             IntConsumer onResize) {
+        if (minSize < 1 || maxSize < minSize) {
+            throw new IllegalArgumentException("Pool size bounds must satisfy 1 <= min <= max");
+        }
+        this.pool = pool;
+        this.poolConfig = poolConfig;
+        this.admission = admission;
+        this.onResize = onResize;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.targetAcquireNanos = targetAcquire.toNanos();
+        this.shrinkAfterIdleTicks = Math.max(1, shrinkAfterIdleTicks);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pool-sizing-advisor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start(Duration interval) {
+        lastAcquisitions = admission.acquisitions();
+        lastAcquireNanos = admission.totalAcquireNanos();
+        scheduler.scheduleWithFixedDelay(this::safeTick, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        LOGGER.info("Pool sizing advisor started: size bounds {}-{}, target acquire {} ms, every {} ms",
+            minSize, maxSize, targetAcquireNanos / 1_000_000, interval.toMillis());
+    }
+
+    private void safeTick() {
+        try {
+            tick();
+        } catch (RuntimeException exception) {
+            // a failed tick must not cancel the schedule
+            LOGGER.warn("Pool sizing advisor tick failed", exception);
+        }
+    }
+
+    private void tick() {
+        long acquisitions = admission.acquisitions();
+        long acquireNanos = admission.totalAcquireNanos();
+        long borrowed = acquisitions - lastAcquisitions;
+        long averageAcquireNanos = borrowed == 0 ? 0 : (acquireNanos - lastAcquireNanos) / borrowed;
+        lastAcquisitions = acquisitions;
+        lastAcquireNanos = acquireNanos;
+
+        int waiting = pool.getThreadsAwaitingConnection() + admission.queueLength();
+        int active = pool.getActiveConnections();
+        int current = poolConfig.getMaximumPoolSize();
+
+        if ((waiting > 0 || averageAcquireNanos > targetAcquireNanos) && current < maxSize) {
+            idleTicks = 0;
+            int target = Math.min(maxSize, current + Math.max(1, current / 4));
+            resize(current, target, "%d waiting, avg acquire %.1f ms over %d borrows, %d active"
+                .formatted(waiting, averageAcquireNanos / 1_000_000.0, borrowed, active));
+            return;
+        }
+
+        if (waiting == 0 && active * 2 <= current && current > minSize) {
+            if (++idleTicks >= shrinkAfterIdleTicks) {
+                idleTicks = 0;
+                resize(current, current - 1, "no waiters and at most %d of %d connections active for %d intervals"
+                    .formatted(active, current, shrinkAfterIdleTicks));
+            }
+            return;
+        }
+        idleTicks = 0;
+    }
+
+    private void resize(int current, int target, String reason) {
+        poolConfig.setMaximumPoolSize(target);
+        if (poolConfig.getMinimumIdle() > target) {
+            poolConfig.setMinimumIdle(target);
+        }
+        onResize.accept(target);
+        LOGGER.info("Resized {} from {} to {} connections: {}", poolConfig.getPoolName(), current, target, reason);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
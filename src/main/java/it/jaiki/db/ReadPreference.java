@@ -0,0 +1,11 @@
+package it.jaiki.db;
+
+/**
+ * Where a repository read is served from.
+ */
+public enum ReadPreference {
+    /** The read replica when one is configured; may lag behind recent writes. */
+    REPLICA,
+    /** The primary, for reads that must observe the caller's own writes. */
+    PRIMARY
+}
@@ -0,0 +1,117 @@
+package it.jaiki.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hands out read replica connections, falling back to the primary while the replica is unreachable.
+ *
+ * <p>After a failed borrow the replica is skipped for {@code retryInterval}; the first borrow after
+ * that probes it again. A borrow that only timed out because the replica pool is busy is served by
+ * the primary without marking the replica down. The replica pool should use a short connection
+ * timeout so that a dead replica costs at most one short wait per interval.
+ */
+public final class ReplicaFallbackDataSource implements DataSource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaFallbackDataSource.class);
+
+    private final DataSource replica;
+    private final DataSource primary;
+    private final long retryIntervalNanos;
+    /** {@link System#nanoTime()} before which the replica is skipped; 0 while it is healthy. */
+    private final AtomicLong downUntil = new AtomicLong();
+    private final LongAdder fallbacks = new LongAdder();
+
+    public ReplicaFallbackDataSource(DataSource replica, DataSource primary, Duration retryInterval) {
+        this.replica = replica;
+        this.primary = primary;
+        this.retryIntervalNanos = retryInterval.toNanos();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long skipUntil = downUntil.get();
+        if (skipUntil != 0 && System.nanoTime() - skipUntil < 0) {
+            fallbacks.increment();
+            return primary.getConnection();
+        }
+        try {
+            Connection connection = replica.getConnection();
+            if (skipUntil != 0 && downUntil.compareAndSet(skipUntil, 0)) {
+                LOGGER.info("Read replica is reachable again, routing reads back to it");
+            }
+            return connection;
+        } catch (SQLException exception) {
+            // a pool timeout without an underlying failure means the replica is busy, not down
+            boolean unreachable = !(exception instanceof SQLTransientConnectionException) || exception.getCause() != null;
+            if (unreachable && downUntil.compareAndSet(skipUntil, System.nanoTime() + retryIntervalNanos)) {
+                LOGGER.warn("Read replica unavailable, serving reads from the primary for {} ms: {}",
+                    retryIntervalNanos / 1_000_000, exception.getMessage());
+            }
+            fallbacks.increment();
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Replica routing only supports pooled credentials");
+    }
+
+    public boolean isReplicaAvailable() {
+        long skipUntil = downUntil.get();
+        return skipUntil == 0 || System.nanoTime() - skipUntil >= 0;
+    }
+
+    public long fallbacks() {
+        return fallbacks.sum();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return replica.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        replica.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        replica.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return replica.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return replica.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return replica.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || replica.isWrapperFor(iface);
+    }
+}
@@ -0,0 +1,89 @@
+package it.jaiki.db;
+
+import org.postgresql.PGStatement;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The fixed SQL texts issued by the repositories, each registered once under a name.
+ *
+ * <p>pgjdbc caches parsed statements per physical connection, keyed by SQL text, and switches a
+ * statement to a named server-side prepare once it has run {@code prepareThreshold} times on that
+ * connection; from then on an execution is only a bind and execute, without parse and plan.
+ * Preparing every repository statement from one registered text keeps that set small and stable.
+ * {@linkplain #registerHot Hot} statements skip the threshold and are prepared server-side on their
+ * first execution per connection. The tracer reports the registered name and how many executions
+ * of each shape were server-prepared.
+ */
+public final class StatementRegistry {
+
+    private static final ConcurrentHashMap<String, StatementShape> BY_SQL = new ConcurrentHashMap<>();
+
+    private StatementRegistry() {
+    }
+
+    public static StatementShape register(String name, String sql) {
+        return register(new StatementShape(name, sql, false));
+    }
+
+    /**
+     * Registers a statement on a latency-sensitive path, prepared server-side from its first execution.
+     */
+    public static StatementShape registerHot(String name, String sql) {
+        return register(new StatementShape(name, sql, true));
+    }
+
+    public static Optional<StatementShape> lookup(String sql) {
+        return Optional.ofNullable(BY_SQL.get(sql));
+    }
+
+    public static List<StatementShape> shapes() {
+        return BY_SQL.values().stream()
+            .sorted(Comparator.comparing(StatementShape::name))
+            .toList();
+    }
+
+    private static StatementShape register(StatementShape shape) {
+        StatementShape existing = BY_SQL.putIfAbsent(shape.sql(), shape);
+        if (existing != null && !existing.name().equals(shape.name())) {
+            throw new IllegalStateException("Statement %s is already registered as %s".formatted(shape.name(), existing.name()));
+        }
+        return existing != null ? existing : shape;
+    }
+
+    /**
+     * A registered SQL text.
+     */
+    public record StatementShape(String name, String sql, boolean hot) {
+
+        public PreparedStatement prepare(Connection connection) throws SQLException {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            if (hot) {
+                try {
+                    preferServerPrepare(statement);
+                } catch (SQLException | RuntimeException exception) {
+                    statement.close();
+                    throw exception;
+                }
+            }
+            return statement;
+        }
+
+        private static void preferServerPrepare(PreparedStatement statement) throws SQLException {
+            if (!statement.isWrapperFor(PGStatement.class)) {
+                return;
+            }
+            PGStatement pgStatement = statement.unwrap(PGStatement.class);
+            // a threshold of 0 turns server-side prepares off for the connection, e.g. behind a transaction pooler
+            if (pgStatement.getPrepareThreshold() > 1) {
+                pgStatement.setPrepareThreshold(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,568 @@
+package it.jaiki.db;
+
+import org.postgresql.PGStatement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Traces statements and connection hold times for everything borrowed through it.
+ *
+ * <p>Connections, statements and result sets are wrapped in proxies that record, per execution,
+ * the SQL text, the number of bound parameters, the time spent executing and fetching, and the
+ * rows read or affected. Executions are aggregated by statement shape (multi-row {@code VALUES}
+ * lists are collapsed) and labelled with their {@link StatementRegistry} name; executions that ran
+ * as a server-side prepared statement, skipping parse and plan, are counted separately. Executions slower than {@code slowStatementThreshold}, and connections held
+ * longer than {@code slowHoldThreshold}, are logged with the repository method that issued them;
+ * the caller is only resolved on that slow path.
+ */
+public final class TracingDataSource implements DataSource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TracingDataSource.class);
+    private static final String CALLER_PACKAGE = "it.jaiki.repository.";
+    private static final String OVERFLOW_SHAPE = "<other statements>";
+    private static final Pattern REPEATED_VALUES = Pattern.compile("(\\([?, ]+\\))(\\s*,\\s*\\([?, ]+\\))+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+    private final DataSource delegate;
+    private final boolean enabled;
+    private final long slowStatementNanos;
+    private final long slowHoldNanos;
+    private final int maxShapes;
+
+    /** Raw SQL to its shape's stats; several raw strings can share one shape. */
+    private final ConcurrentHashMap<String, ShapeStats> statsBySql;
+    private final ConcurrentHashMap<String, ShapeStats> statsByShape;
+
+    private final LongAdder connections;
+    private final LongAdder totalHoldNanos;
+    private final AtomicLong maxHoldNanos;
+    private final LongAdder slowHolds;
+    private final LongAdder slowStatements;
+    private final LongAdder executions;
+    private final LongAdder serverPreparedExecutions;
+
+    public TracingDataSource(DataSource delegate, boolean enabled, Duration slowStatementThreshold,
+                             Duration slowHoldThreshold, int maxShapes) {
+        if (maxShapes < 1) {
+            throw new IllegalArgumentException("Statement shape limit must be positive");
+        }
+        this.delegate = delegate;
+        this.enabled = enabled;
+        this.slowStatementNanos = slowStatementThreshold.toNanos();
+        this.slowHoldNanos = slowHoldThreshold.toNanos();
+        this.maxShapes = maxShapes;
+        this.statsBySql = new ConcurrentHashMap<>();
+        this.statsByShape = new ConcurrentHashMap<>();
+        this.connections = new LongAdder();
+        this.totalHoldNanos = new LongAdder();
+        this.maxHoldNanos = new AtomicLong();
+        this.slowHolds = new LongAdder();
+        this.slowStatements = new LongAdder();
+        this.executions = new LongAdder();
+        this.serverPreparedExecutions = new LongAdder();
+    }
+
+    private TracingDataSource(DataSource delegate, TracingDataSource shared) {
+        this.delegate = delegate;
+        this.enabled = shared.enabled;
+        this.slowStatementNanos = shared.slowStatementNanos;
+        this.slowHoldNanos = shared.slowHoldNanos;
+        this.maxShapes = shared.maxShapes;
+        this.statsBySql = shared.statsBySql;
+        this.statsByShape = shared.statsByShape;
+        this.connections = shared.connections;
+        this.totalHoldNanos = shared.totalHoldNanos;
+        this.maxHoldNanos = shared.maxHoldNanos;
+        this.slowHolds = shared.slowHolds;
+        this.slowStatements = shared.slowStatements;
+        this.executions = shared.executions;
+        this.serverPreparedExecutions = shared.serverPreparedExecutions;
+    }
+
+    /**
+     * Traces another data source, such as a read replica, into the same statistics and settings.
+     */
+    public TracingDataSource alsoTrace(DataSource other) {
+        return new TracingDataSource(other, this);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return trace(delegate.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return trace(delegate.getConnection(username, password));
+    }
+
+    /**
+     * Returns up to {@code limit} statement shapes, slowest first by {@code order}.
+     */
+    public List<StatementStats> topStatements(int limit, Order order) {
+        return statsByShape.values().stream()
+            .map(ShapeStats::snapshot)
+            .sorted(order.comparator)
+            .limit(limit)
+            .toList();
+    }
+
+    public TraceSummary summary() {
+        long borrowed = connections.sum();
+        return new TraceSummary(
+            enabled,
+            nanosToMillis(slowStatementNanos),
+            nanosToMillis(slowHoldNanos),
+            statsByShape.size(),
+            slowStatements.sum(),
+            executions.sum(),
+            serverPreparedExecutions.sum(),
+            borrowed,
+            borrowed == 0 ? 0.0 : nanosToMillis(totalHoldNanos.sum()) / borrowed,
+            nanosToMillis(maxHoldNanos.get()),
+            slowHolds.sum()
+        );
+    }
+
+    /**
+     * Clears the statement shapes and every counter in {@link #summary()}, so both describe the same
+     * window. Connections borrowed before the reset still add their hold time when they are returned.
+     */
+    public void reset() {
+        statsBySql.clear();
+        statsByShape.clear();
+        connections.reset();
+        totalHoldNanos.reset();
+        maxHoldNanos.set(0);
+        slowHolds.reset();
+        slowStatements.reset();
+        executions.reset();
+        serverPreparedExecutions.reset();
+    }
+
+    private Connection trace(Connection connection) {
+        if (!enabled) {
+            return connection;
+        }
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class<?>[]{Connection.class},
+            new ConnectionHandler(connection)
+        );
+    }
+
+    private void recordExecution(String sql, int binds, long elapsedNanos, long rows, boolean serverPrepared) {
+        ShapeStats stats = statsBySql.get(sql);
+        if (stats == null) {
+            stats = statsBySql.computeIfAbsent(sql, this::statsForShape);
+        }
+        stats.record(binds, elapsedNanos, rows, serverPrepared);
+        executions.increment();
+        if (serverPrepared) {
+            serverPreparedExecutions.increment();
+        }
+        if (elapsedNanos >= slowStatementNanos) {
+            slowStatements.increment();
+            String caller = caller();
+            stats.lastSlowCaller = caller;
+            LOGGER.warn("Slow statement in {}: {} ms, {} binds, {} rows: {}",
+                caller, nanosToMillis(elapsedNanos), binds, rows, stats.shape);
+        }
+    }
+
+    private void recordHold(long heldNanos) {
+        connections.increment();
+        totalHoldNanos.add(heldNanos);
+        maxHoldNanos.accumulateAndGet(heldNanos, Math::max);
+        if (heldNanos >= slowHoldNanos) {
+            slowHolds.increment();
+            LOGGER.warn("Connection held for {} ms by {}", nanosToMillis(heldNanos), caller());
+        }
+    }
+
+    private ShapeStats statsForShape(String sql) {
+        String shape = shapeOf(sql);
+        ShapeStats existing = statsByShape.get(shape);
+        if (existing != null) {
+            return existing;
+        }
+        // caps memory when callers build SQL dynamically
+        if (statsByShape.size() >= maxShapes) {
+            return statsByShape.computeIfAbsent(OVERFLOW_SHAPE, key -> new ShapeStats(key, null));
+        }
+        String name = StatementRegistry.lookup(sql).map(StatementRegistry.StatementShape::name).orElse(null);
+        return statsByShape.computeIfAbsent(shape, key -> new ShapeStats(key, name));
+    }
+
+    static String shapeOf(String sql) {
+        String collapsed = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        return REPEATED_VALUES.matcher(collapsed).replaceAll("$1, ...");
+    }
+
+    private static String caller() {
+        return STACK_WALKER.walk(frames -> frames
+            .filter(frame -> frame.getClassName().startsWith(CALLER_PACKAGE))
+            .findFirst()
+            .map(frame -> frame.getClassName().substring(CALLER_PACKAGE.length()) + "." + methodName(frame.getMethodName()))
+            .orElse("unknown caller"));
+    }
+
+    /**
+     * Maps synthetic lambda names such as {@code lambda$updateAll$2} back to the enclosing method.
+     */
+    private static String methodName(String name) {
+        if (name.startsWith("lambda$")) {
+            int end = name.indexOf('$', "lambda$".length());
+            return end < 0 ? name : name.substring("lambda$".length(), end);
+        }
+        return name;
+    }
+
+    private static double nanosToMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return delegate.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        delegate.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        delegate.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return delegate.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return delegate.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate.isWrapperFor(iface);
+    }
+
+    /**
+     * Sort orders for {@link #topStatements(int, Order)}.
+     */
+    public enum Order {
+        TOTAL(Comparator.comparingDouble(StatementStats::totalMillis).reversed()),
+        MEAN(Comparator.comparingDouble(StatementStats::meanMillis).reversed()),
+        MAX(Comparator.comparingDouble(StatementStats::maxMillis).reversed()),
+        COUNT(Comparator.comparingLong(StatementStats::executions).reversed());
+
+        private final Comparator<StatementStats> comparator;
+
+        Order(Comparator<StatementStats> comparator) {
+            this.comparator = comparator;
+        }
+    }
+
+    /**
+     * Aggregated executions of one statement shape; times in milliseconds. {@code name} is the
+     * registered statement name, or {@code null} for SQL built outside the registry.
+     */
+    public record StatementStats(
+        String name,
+        String sql,
+        long executions,
+        long serverPrepared,
+        double totalMillis,
+        double meanMillis,
+        double maxMillis,
+        long rows,
+        long binds,
+        String lastSlowCaller
+    ) {
+    }
+
+    /**
+     * Tracer settings and connection hold totals; times in milliseconds.
+     */
+    public record TraceSummary(
+        boolean enabled,
+        double slowStatementThresholdMillis,
+        double slowHoldThresholdMillis,
+        int statementShapes,
+        long slowStatements,
+        long executions,
+        long serverPreparedExecutions,
+        long connectionsBorrowed,
+        double averageHoldMillis,
+        double maxHoldMillis,
+        long slowHolds
+    ) {
+    }
+
+    private static final class ShapeStats {
+
+        private final String shape;
+        private final String name;
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder serverPrepared = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder binds = new LongAdder();
+        private volatile String lastSlowCaller;
+
+        private ShapeStats(String shape, String name) {
+            this.shape = shape;
+            this.name = name;
+        }
+
+        void record(int boundParameters, long elapsedNanos, long rowCount, boolean serverPrepare) {
+            executions.increment();
+            if (serverPrepare) {
+                serverPrepared.increment();
+            }
+            totalNanos.add(elapsedNanos);
+            maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+            rows.add(rowCount);
+            binds.add(boundParameters);
+        }
+
+        StatementStats snapshot() {
+            long count = executions.sum();
+            long total = totalNanos.sum();
+            return new StatementStats(
+                name,
+                shape,
+                count,
+                serverPrepared.sum(),
+                nanosToMillis(total),
+                count == 0 ? 0.0 : nanosToMillis(total) / count,
+                nanosToMillis(maxNanos.get()),
+                rows.sum(),
+                binds.sum(),
+                lastSlowCaller
+            );
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+
+        private final Connection target;
+        private final long acquiredAt = System.nanoTime();
+        private boolean closed;
+
+        private ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name) && method.getParameterCount() == 0) {
+                try {
+                    target.close();
+                } finally {
+                    if (!closed) {
+                        closed = true;
+                        recordHold(System.nanoTime() - acquiredAt);
+                    }
+                }
+                return null;
+            }
+            Object result = invokeTarget(target, method, args);
+            if (result instanceof Statement statement) {
+                // prepareStatement/prepareCall carry the SQL up front, createStatement gets it at execute
+                String sql = name.startsWith("prepare") && args != null && args[0] instanceof String text ? text : null;
+                return Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{method.getReturnType()},
+                    new StatementHandler(statement, sql)
+                );
+            }
+            return result;
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+
+        private final Statement target;
+        private String sql;
+        private PGStatement pgStatement;
+        private boolean executing;
+        private boolean serverPrepared;
+        /** Parameters set since the last execution; they belong to the next one. */
+        private int pendingBinds;
+        /** Parameters of the execution in progress, recorded by {@link #finish()}. */
+        private int binds;
+        private long elapsedNanos;
+        private long rows;
+
+        private StatementHandler(Statement target, String sql) {
+            this.target = target;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                finish();
+                if (args != null && args.length > 0 && args[0] instanceof String text) {
+                    sql = text;
+                }
+                executing = true;
+                binds = pendingBinds;
+                pendingBinds = 0;
+                serverPrepared = willUseServerPrepare();
+                long startedAt = System.nanoTime();
+                try {
+                    Object result = invokeTarget(target, method, args);
+                    countRows(result);
+                    return result instanceof ResultSet resultSet ? traceResultSet(resultSet) : result;
+                } finally {
+                    elapsedNanos += System.nanoTime() - startedAt;
+                }
+            }
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                pendingBinds++;
+            } else if ("getResultSet".equals(name) || "getGeneratedKeys".equals(name)) {
+                Object result = invokeTarget(target, method, args);
+                return result instanceof ResultSet resultSet ? traceResultSet(resultSet) : result;
+            } else if ("close".equals(name)) {
+                finish();
+            }
+            return invokeTarget(target, method, args);
+        }
+
+        /**
+         * Whether pgjdbc runs the coming execution as a named server-side statement, i.e. without
+         * parse and plan once the statement has been prepared on this connection.
+         */
+        private boolean willUseServerPrepare() {
+            if (!(target instanceof PreparedStatement)) {
+                return false;
+            }
+            try {
+                if (pgStatement == null) {
+                    if (!target.isWrapperFor(PGStatement.class)) {
+                        return false;
+                    }
+                    pgStatement = target.unwrap(PGStatement.class);
+                }
+                return pgStatement.isUseServerPrepare();
+            } catch (SQLException exception) {
+                return false;
+            }
+        }
+
+        private void countRows(Object result) {
+            if (result instanceof Integer count && count > 0) {
+                rows += count;
+            } else if (result instanceof Long count && count > 0) {
+                rows += count;
+            } else if (result instanceof int[] counts) {
+                for (int count : counts) {
+                    rows += Math.max(count, 0);
+                }
+            } else if (result instanceof long[] counts) {
+                for (long count : counts) {
+                    rows += Math.max(count, 0);
+                }
+            }
+        }
+
+        private ResultSet traceResultSet(ResultSet resultSet) {
+            return (ResultSet) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class},
+                new ResultSetHandler(resultSet, this)
+            );
+        }
+
+        /**
+         * Records the previous execution, including the rows fetched after it returned. Binds set
+         * for the next execution are left pending.
+         */
+        private void finish() {
+            if (executing && sql != null) {
+                recordExecution(sql, binds, elapsedNanos, rows, serverPrepared);
+            }
+            executing = false;
+            serverPrepared = false;
+            binds = 0;
+            elapsedNanos = 0;
+            rows = 0;
+        }
+    }
+
+    private static final class ResultSetHandler implements InvocationHandler {
+
+        private final ResultSet target;
+        private final StatementHandler statement;
+
+        private ResultSetHandler(ResultSet target, StatementHandler statement) {
+            this.target = target;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("next".equals(method.getName())) {
+                // fetching more rows is part of the statement's cost (cursors fetch lazily)
+                long startedAt = System.nanoTime();
+                try {
+                    Object hasRow = invokeTarget(target, method, args);
+                    if (Boolean.TRUE.equals(hasRow)) {
+                        statement.rows++;
+                    }
+                    return hasRow;
+                } finally {
+                    statement.elapsedNanos += System.nanoTime() - startedAt;
+                }
+            }
+            return invokeTarget(target, method, args);
+        }
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException exception) {
+            throw exception.getCause();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package it.jaiki.metrics;
+
+import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records {@code http.server.requests} timers tagged with the method, the Javalin route template
+ * (e.g. {@code /api/products/{id}}, never the raw path) and the status code.
+ *
+ * <p>Timers are cached per method and route in an array indexed by status code, so after warm-up
+ * a recording does not allocate.
+ */
+public final class HttpMetrics {
+
+    public static final String METRIC_NAME = "http.server.requests";
+
+    private static final String UNMATCHED_ROUTE = "UNMATCHED";
+    private static final int STATUS_SLOTS = 600;
+    /** Tag of the shared slot 0 for out-of-range status codes. */
+    private static final String OTHER_STATUS = "other";
+
+    private final MeterRegistry registry;
+    private final Map<HandlerType, ConcurrentHashMap<String, AtomicReferenceArray<Timer>>> timers = new EnumMap<>(HandlerType.class);
+
+    public HttpMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        // fully populated up front, so the EnumMap itself is only ever read concurrently
+        for (HandlerType method : HandlerType.values()) {
+            timers.put(method, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Request logger callback; Javalin calls it once per request, after async handlers complete.
+     */
+    public void record(Context ctx, float executionTimeMs) {
+        String route = ctx.endpointHandlerPath();
+        if (route.isEmpty()) {
+            // 404s for unknown paths must not create one time series per probed URL
+            route = UNMATCHED_ROUTE;
+        }
+        int status = ctx.statusCode();
+        timer(ctx.method(), route, status).record((long) (executionTimeMs * 1_000_000L), TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(HandlerType method, String route, int status) {
+        AtomicReferenceArray<Timer> byStatus = timers.get(method).get(route);
+        if (byStatus == null) {
+            byStatus = timers.get(method).computeIfAbsent(route, key -> new AtomicReferenceArray<>(STATUS_SLOTS));
+        }
+        int slot = status > 0 && status < STATUS_SLOTS ? status : 0;
+        Timer timer = byStatus.get(slot);
+        if (timer == null) {
+            // registration is idempotent, so a lost race just returns the same timer
+            timer = Timer.builder(METRIC_NAME)
+                .description("HTTP request latency by route template")
+                .tag("method", method.name())
+                .tag("route", route)
+                .tag("status", slot == 0 ? OTHER_STATUS : Integer.toString(status))
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry);
+            byStatus.set(slot, timer);
+        }
+        return timer;
+    }
+}
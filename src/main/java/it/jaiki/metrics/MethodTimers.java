@@ -0,0 +1,56 @@
+package it.jaiki.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-method call timers for one repository, published as {@code repository.calls}.
+ *
+ * <p>Timers are registered on first use and then looked up by the method name constant, so a
+ * recording is a map read plus a timer update with no per-call allocation.
+ */
+public final class MethodTimers {
+
+    public static final String METRIC_NAME = "repository.calls";
+
+    private final MeterRegistry registry;
+    private final String repository;
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public MethodTimers(MeterRegistry registry, String repository) {
+        this.registry = registry;
+        this.repository = repository;
+    }
+
+    /**
+     * Timers reporting to Micrometer's global registry, which discards them unless a registry has
+     * been added to it. Used by repositories built outside the server, e.g. by the CLI tools.
+     */
+    public static MethodTimers global(String repository) {
+        return new MethodTimers(Metrics.globalRegistry, repository);
+    }
+
+    public void record(String method, long startedAtNanos) {
+        timer(method).record(System.nanoTime() - startedAtNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(String method) {
+        Timer timer = timers.get(method);
+        if (timer != null) {
+            return timer;
+        }
+        return timers.computeIfAbsent(method, name -> Timer.builder(METRIC_NAME)
+            .description("Time spent in repository methods, including connection acquisition")
+            .tag("repository", repository)
+            .tag("method", name)
+            .publishPercentileHistogram()
+            .minimumExpectedValue(Duration.ofMillis(1))
+            .maximumExpectedValue(Duration.ofSeconds(30))
+            .register(registry));
+    }
+}
@@ -20,18 +20,22 @@ public class Product {
 
     private final OffsetDateTime updatedAt;
 
+    private final long version;
+
     public Product(
         @JsonProperty("id") long id,
         @JsonProperty("name") String name,
         @JsonProperty("price") BigDecimal price,
         @JsonProperty("createdAt") OffsetDateTime createdAt,
-        @JsonProperty("updatedAt") OffsetDateTime updatedAt
+        @JsonProperty("updatedAt") OffsetDateTime updatedAt,
+        @JsonProperty("version") long version
     ) {
         this.id = id;
         this.name = name;
         this.price = price;
         this.createdAt = createdAt;
         this.updatedAt = updatedAt;
+        this.version = version;
     }
 
     public long getId() {
@@ -53,4 +57,8 @@ public class Product {
     public OffsetDateTime getUpdatedAt() {
         return updatedAt;
     }
+
+    public long getVersion() {
+        return version;
+    }
 }
@@ -0,0 +1,23 @@
+package it.jaiki.model.request;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Represents payload for deleting several products at once.
+ */
+public final class ProductBatchDeleteRequest {
+
+    private final List<Long> ids;
+
+    @JsonCreator
+    public ProductBatchDeleteRequest(@JsonProperty(value = "ids", required = true) List<Long> ids) {
+        this.ids = ids;
+    }
+
+    public List<Long> getIds() {
+        return ids;
+    }
+}
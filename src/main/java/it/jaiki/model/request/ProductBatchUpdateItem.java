@@ -0,0 +1,42 @@
+package it.jaiki.model.request;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+/**
+ * Represents one entry of a bulk product update; omitted fields keep their current value.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class ProductBatchUpdateItem {
+
+    private final long id;
+    private final String name;
+    private final BigDecimal price;
+
+    @JsonCreator
+    public ProductBatchUpdateItem(
+        @JsonProperty(value = "id", required = true) long id,
+        @JsonProperty("name") String name,
+        @JsonProperty("price") BigDecimal price
+    ) {
+        this.id = id;
+        this.name = name;
+        this.price = price;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Optional<String> getName() {
+        return Optional.ofNullable(name);
+    }
+
+    public Optional<BigDecimal> getPrice() {
+        return Optional.ofNullable(price);
+    }
+}
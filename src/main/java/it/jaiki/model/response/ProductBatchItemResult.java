@@ -0,0 +1,60 @@
+package it.jaiki.model.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import it.jaiki.model.Product;
+
+/**
+ * Outcome of a single entry in a bulk product operation.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class ProductBatchItemResult {
+
+    public enum Status {
+        CREATED,
+        UPDATED,
+        DELETED,
+        INVALID,
+        NOT_FOUND
+    }
+
+    private final int index;
+    private final Long id;
+    private final Status status;
+    private final Product product;
+    private final String error;
+
+    public ProductBatchItemResult(
+        @JsonProperty("index") int index,
+        @JsonProperty("id") Long id,
+        @JsonProperty("status") Status status,
+        @JsonProperty("product") Product product,
+        @JsonProperty("error") String error
+    ) {
+        this.index = index;
+        this.id = id;
+        this.status = status;
+        this.product = product;
+        this.error = error;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
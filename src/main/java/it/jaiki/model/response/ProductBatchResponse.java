@@ -0,0 +1,37 @@
+package it.jaiki.model.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Per-item results of a bulk product operation, in request order.
+ */
+public final class ProductBatchResponse {
+
+    private final int succeeded;
+    private final int failed;
+    private final List<ProductBatchItemResult> results;
+
+    public ProductBatchResponse(
+        @JsonProperty("succeeded") int succeeded,
+        @JsonProperty("failed") int failed,
+        @JsonProperty("results") List<ProductBatchItemResult> results
+    ) {
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.results = results;
+    }
+
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public List<ProductBatchItemResult> getResults() {
+        return results;
+    }
+}
@@ -0,0 +1,43 @@
+package it.jaiki.model.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Summary of a bulk product import. Only the first rejected lines are listed in {@code errors}.
+ */
+public final class ProductImportResponse {
+
+    private final long imported;
+    private final long rejected;
+    private final List<LineError> errors;
+
+    public ProductImportResponse(
+        @JsonProperty("imported") long imported,
+        @JsonProperty("rejected") long rejected,
+        @JsonProperty("errors") List<LineError> errors
+    ) {
+        this.imported = imported;
+        this.rejected = rejected;
+        this.errors = errors;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public List<LineError> getErrors() {
+        return errors;
+    }
+
+    /**
+     * A rejected input line and the reason it was rejected.
+     */
+    public record LineError(long line, String error) {
+    }
+}
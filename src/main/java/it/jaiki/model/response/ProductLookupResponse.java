@@ -0,0 +1,31 @@
+package it.jaiki.model.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import it.jaiki.model.Product;
+
+import java.util.List;
+
+/**
+ * Products found by a multi-get in request order, and the requested ids that do not exist.
+ */
+public final class ProductLookupResponse {
+
+    private final List<Product> items;
+    private final List<Long> missing;
+
+    public ProductLookupResponse(
+        @JsonProperty("items") List<Product> items,
+        @JsonProperty("missing") List<Long> missing
+    ) {
+        this.items = items;
+        this.missing = missing;
+    }
+
+    public List<Product> getItems() {
+        return items;
+    }
+
+    public List<Long> getMissing() {
+        return missing;
+    }
+}
@@ -0,0 +1,31 @@
+package it.jaiki.model.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import it.jaiki.model.Product;
+
+import java.util.List;
+
+/**
+ * A single page of products together with the opaque cursor for the next page.
+ */
+public final class ProductPageResponse {
+
+    private final List<Product> items;
+    private final String nextCursor;
+
+    public ProductPageResponse(
+        @JsonProperty("items") List<Product> items,
+        @JsonProperty("nextCursor") String nextCursor
+    ) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Product> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,32 @@
+package it.jaiki.model.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import it.jaiki.db.TracingDataSource.StatementStats;
+import it.jaiki.db.TracingDataSource.TraceSummary;
+
+import java.util.List;
+
+/**
+ * Statement tracing totals together with the slowest statement shapes.
+ */
+public final class StatementTraceResponse {
+
+    private final TraceSummary summary;
+    private final List<StatementStats> statements;
+
+    public StatementTraceResponse(
+        @JsonProperty("summary") TraceSummary summary,
+        @JsonProperty("statements") List<StatementStats> statements
+    ) {
+        this.summary = summary;
+        this.statements = statements;
+    }
+
+    public TraceSummary getSummary() {
+        return summary;
+    }
+
+    public List<StatementStats> getStatements() {
+        return statements;
+    }
+}
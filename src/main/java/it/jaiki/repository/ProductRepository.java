@@ -1,35 +1,132 @@
 package it.jaiki.repository;
 
+import it.jaiki.db.ReadPreference;
+import it.jaiki.db.StatementRegistry;
+import it.jaiki.db.StatementRegistry.StatementShape;
+import it.jaiki.metrics.MethodTimers;
 import it.jaiki.model.Product;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Performs raw JDBC operations against the products table.
+ *
+ * <p>Catalog reads go to {@code readDataSource} (a replica, when configured) unless the caller asks
+ * for {@link ReadPreference#PRIMARY}; writes and the reads inside write transactions use the primary.
  */
 public class ProductRepository {
 
+    public static final int DEFAULT_FETCH_SIZE = 500;
+    public static final int DEFAULT_BATCH_CHUNK_SIZE = 500;
+    /** Two binds per row would exceed PostgreSQL's 65535 bind parameters beyond this many rows. */
+    public static final int MAX_BATCH_CHUNK_SIZE = 32_767;
+
+    private static final int COPY_BUFFER_CHARS = 64 * 1024;
+
+    private static final StatementShape FIND_ALL = StatementRegistry.register(
+        "products.findAll", "SELECT id, name, price, created_at, updated_at, version FROM products ORDER BY id");
+    private static final StatementShape FIND_PAGE = StatementRegistry.registerHot(
+        "products.findPage", "SELECT id, name, price, created_at, updated_at, version FROM products WHERE id > ? ORDER BY id LIMIT ?");
+    private static final StatementShape FIND_BY_ID = StatementRegistry.registerHot(
+        "products.findById", "SELECT id, name, price, created_at, updated_at, version FROM products WHERE id = ?");
+    private static final StatementShape FIND_BY_IDS = StatementRegistry.register(
+        "products.findByIds", "SELECT id, name, price, created_at, updated_at, version FROM products WHERE id = ANY(?)");
+    private static final StatementShape FIND_COLLECTION_VERSION = StatementRegistry.registerHot(
+        "products.findCollectionVersion", "SELECT counter.change_count + logged.pending AS change_count, "
+            + "greatest(counter.changed_at, logged.changed_at) AS changed_at "
+            + "FROM products_change_counter counter, "
+            + "(SELECT count(*) AS pending, max(changed_at) AS changed_at FROM products_changes) logged "
+            + "WHERE counter.id = 1");
+    private static final StatementShape FIND_LOGGED_CHANGES = StatementRegistry.register(
+        "products.findLoggedChanges", "SELECT transaction_id::text::bigint AS transaction_id FROM products_changes");
+    private static final StatementShape INSERT = StatementRegistry.register(
+        "products.insert", "INSERT INTO products(name, price) VALUES (?, ?) RETURNING id, created_at, updated_at, version");
+    // ids are drawn next to the ordinal, so every returned row is matched to its input position
+    private static final StatementShape INSERT_ALL = StatementRegistry.register(
+        "products.insertAll", "WITH input AS ("
+            + "SELECT nextval(pg_get_serial_sequence('products', 'id')) AS id, item.name, item.price, item.position "
+            + "FROM unnest(?::text[], ?::numeric[]) WITH ORDINALITY AS item(name, price, position)), "
+            + "inserted AS (INSERT INTO products(id, name, price) SELECT id, name, price FROM input "
+            + "RETURNING id, name, price, created_at, updated_at, version) "
+            + "SELECT inserted.* FROM inserted JOIN input ON input.id = inserted.id ORDER BY input.position");
+    private static final StatementShape UPDATE = StatementRegistry.register(
+        "products.update", "UPDATE products SET name = COALESCE(?, name), price = COALESCE(?, price) "
+            + "WHERE id = ? AND (?::bigint IS NULL OR version = ?) "
+            + "RETURNING id, name, price, created_at, updated_at, version");
+    private static final StatementShape UPDATE_BATCH = StatementRegistry.register(
+        "products.updateAll", "UPDATE products SET name = COALESCE(?, name), price = COALESCE(?, price) WHERE id = ?");
+    private static final StatementShape DELETE = StatementRegistry.register(
+        "products.delete", "DELETE FROM products WHERE id = ? AND (?::bigint IS NULL OR version = ?)");
+    private static final StatementShape DELETE_BY_IDS = StatementRegistry.register(
+        "products.deleteAll", "DELETE FROM products WHERE id = ANY(?) RETURNING id");
+
     private final DataSource dataSource;
+    private final DataSource readDataSource;
+    private final int batchChunkSize;
+    private final MethodTimers timers;
 
     public ProductRepository(DataSource dataSource) {
+        this(dataSource, DEFAULT_BATCH_CHUNK_SIZE);
+    }
+
+    public ProductRepository(DataSource dataSource, int batchChunkSize) {
+        this(dataSource, batchChunkSize, MethodTimers.global("products"));
+    }
+
+    public ProductRepository(DataSource dataSource, int batchChunkSize, MethodTimers timers) {
+        this(dataSource, dataSource, batchChunkSize, timers);
+    }
+
+    public ProductRepository(DataSource dataSource, DataSource readDataSource, int batchChunkSize, MethodTimers timers) {
+        if (batchChunkSize < 1 || batchChunkSize > MAX_BATCH_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Batch chunk size must be between 1 and %d".formatted(MAX_BATCH_CHUNK_SIZE));
+        }
         this.dataSource = dataSource;
+        this.readDataSource = readDataSource;
+        this.batchChunkSize = batchChunkSize;
+        this.timers = timers;
     }
 
     public List<Product> findAll() {
-        String sql = "SELECT id, name, price, created_at, updated_at FROM products ORDER BY id";
+        return findAll(ReadPreference.REPLICA);
+    }
+
+    public List<Product> findAll(ReadPreference preference) {
         List<Product> products = new ArrayList<>();
-        try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql);
+        long startedAt = System.nanoTime();
+        try (Connection connection = source(preference).getConnection();
+             PreparedStatement statement = FIND_ALL.prepare(connection);
              ResultSet resultSet = statement.executeQuery()) {
             while (resultSet.next()) {
                 products.add(mapRow(resultSet));
@@ -37,13 +134,71 @@ public class ProductRepository {
             return products;
         } catch (SQLException exception) {
             throw new RepositoryException("Unable to load products", exception);
+        } finally {
+            timers.record("findAll", startedAt);
+        }
+    }
+
+    /**
+     * Loads at most {@code limit} products with an id strictly greater than {@code afterId},
+     * using the primary key index instead of an OFFSET scan.
+     */
+    public List<Product> findPage(long afterId, int limit) {
+        List<Product> products = new ArrayList<>(limit);
+        long startedAt = System.nanoTime();
+        try (Connection connection = readDataSource.getConnection();
+             PreparedStatement statement = FIND_PAGE.prepare(connection)) {
+            statement.setLong(1, afterId);
+            statement.setInt(2, limit);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    products.add(mapRow(resultSet));
+                }
+                return products;
+            }
+        } catch (SQLException exception) {
+            throw new RepositoryException("Unable to load products after id " + afterId, exception);
+        } finally {
+            timers.record("findPage", startedAt);
+        }
+    }
+
+    /**
+     * Streams every product through a forward-only cursor. The returned stream holds a pooled
+     * connection until it is closed, so callers must use it in a try-with-resources block.
+     */
+    public Stream<Product> streamAll(int fetchSize) {
+        Connection connection = null;
+        long startedAt = System.nanoTime();
+        try {
+            connection = readDataSource.getConnection();
+            // pgjdbc only honours the fetch size outside of auto-commit mode
+            connection.setAutoCommit(false);
+            // forward-only and read-only are the defaults, so the cursor shares findAll's prepared statement
+            PreparedStatement statement = FIND_ALL.prepare(connection);
+            statement.setFetchSize(fetchSize);
+            ResultSet resultSet = statement.executeQuery();
+            Connection owner = connection;
+            return StreamSupport.stream(new ResultSetSpliterator(resultSet), false)
+                .onClose(() -> closeStream(owner, statement, resultSet));
+        } catch (SQLException exception) {
+            if (connection != null) {
+                closeQuietly(connection);
+            }
+            throw new RepositoryException("Unable to stream products", exception);
+        } finally {
+            timers.record("streamAll", startedAt);
         }
     }
 
     public Optional<Product> findById(long id) {
-        String sql = "SELECT id, name, price, created_at, updated_at FROM products WHERE id = ?";
-        try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
+        return findById(id, ReadPreference.REPLICA);
+    }
+
+    public Optional<Product> findById(long id, ReadPreference preference) {
+        long startedAt = System.nanoTime();
+        try (Connection connection = source(preference).getConnection();
+             PreparedStatement statement = FIND_BY_ID.prepare(connection)) {
             statement.setLong(1, id);
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
@@ -53,13 +208,153 @@ public class ProductRepository {
             }
         } catch (SQLException exception) {
             throw new RepositoryException("Unable to load product with id " + id, exception);
+        } finally {
+            timers.record("findById", startedAt);
+        }
+    }
+
+    /**
+     * Loads at most {@code limit} products matching {@code search}, in its sort order, after the
+     * keyset position {@code after} (the last row of the previous page, or {@code null}).
+     *
+     * <p>Each filter and sort order maps onto an index from {@code V5__add_products_search_indexes}:
+     * prefix matching and name order on {@code lower(name) COLLATE "C"}, substring matching on the
+     * trigram index, full-text matching on {@code search_vector} and price ranges and order on
+     * {@code (price, id)}. Every combination is a fixed statement text, so each one is prepared like
+     * the registered statements.
+     */
+    public List<Product> search(ProductSearch search, SearchPosition after, int limit) {
+        String sql = searchSql(search, after != null);
+        StatementShape shape = StatementRegistry.lookup(sql)
+            .orElseGet(() -> StatementRegistry.register(searchStatementName(search, after != null), sql));
+        List<Product> products = new ArrayList<>(limit);
+        long startedAt = System.nanoTime();
+        try (Connection connection = readDataSource.getConnection();
+             PreparedStatement statement = shape.prepare(connection)) {
+            int parameter = 1;
+            if (search.text() != null) {
+                statement.setString(parameter++, switch (search.match()) {
+                    case PREFIX -> escapeLike(search.text()) + "%";
+                    case CONTAINS -> "%" + escapeLike(search.text()) + "%";
+                    case FULLTEXT -> search.text();
+                });
+            }
+            if (search.minPrice() != null) {
+                statement.setBigDecimal(parameter++, search.minPrice());
+            }
+            if (search.maxPrice() != null) {
+                statement.setBigDecimal(parameter++, search.maxPrice());
+            }
+            if (after != null) {
+                switch (search.sort()) {
+                    case NAME -> statement.setString(parameter++, after.name());
+                    case PRICE, PRICE_DESC -> statement.setBigDecimal(parameter++, after.price());
+                    case ID -> {
+                    }
+                }
+                statement.setLong(parameter++, after.id());
+            }
+            statement.setInt(parameter, limit);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    products.add(mapRow(resultSet));
+                }
+                return products;
+            }
+        } catch (SQLException exception) {
+            throw new RepositoryException("Unable to search products", exception);
+        } finally {
+            timers.record("search", startedAt);
+        }
+    }
+
+    /**
+     * Loads the products with the given ids, in no particular order; ids that do not exist are absent.
+     */
+    public List<Product> findByIds(Collection<Long> ids, ReadPreference preference) {
+        long startedAt = System.nanoTime();
+        try (Connection connection = source(preference).getConnection()) {
+            return selectByIds(connection, ids);
+        } catch (SQLException exception) {
+            throw new RepositoryException("Unable to load products by id", exception);
+        } finally {
+            timers.record("findByIds", startedAt);
+        }
+    }
+
+    /**
+     * Counts the committed transactions that changed products, from the log kept by
+     * {@code V8__log_product_changes_per_transaction.sql}.
+     */
+    public CollectionVersion findCollectionVersion() {
+        return findCollectionVersion(ReadPreference.REPLICA);
+    }
+
+    public CollectionVersion findCollectionVersion(ReadPreference preference) {
+        long startedAt = System.nanoTime();
+        try (Connection connection = source(preference).getConnection()) {
+            return selectCollectionVersion(connection);
+        } catch (SQLException exception) {
+            throw new RepositoryException("Unable to load product collection version", exception);
+        } finally {
+            timers.record("findCollectionVersion", startedAt);
+        }
+    }
+
+    /**
+     * Reads every product, the collection version and the ids of the transactions still in the
+     * change log from one snapshot of the primary, so the version matches the rows exactly.
+     */
+    public CollectionSnapshot findCollectionSnapshot() {
+        long startedAt = System.nanoTime();
+        try (Connection connection = dataSource.getConnection()) {
+            int isolation = connection.getTransactionIsolation();
+            connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            try {
+                CollectionSnapshot[] snapshot = new CollectionSnapshot[1];
+                inTransaction(connection, () -> {
+                    CollectionVersion version = selectCollectionVersion(connection);
+                    Set<Long> loggedTransactions = new HashSet<>();
+                    try (PreparedStatement statement = FIND_LOGGED_CHANGES.prepare(connection);
+                         ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            loggedTransactions.add(resultSet.getLong("transaction_id"));
+                        }
+                    }
+                    List<Product> products = new ArrayList<>();
+                    try (PreparedStatement statement = FIND_ALL.prepare(connection);
+                         ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            products.add(mapRow(resultSet));
+                        }
+                    }
+                    snapshot[0] = new CollectionSnapshot(version, loggedTransactions, products);
+                });
+                return snapshot[0];
+            } finally {
+                connection.setTransactionIsolation(isolation);
+            }
+        } catch (SQLException exception) {
+            throw new RepositoryException("Unable to load product collection snapshot", exception);
+        } finally {
+            timers.record("findCollectionSnapshot", startedAt);
+        }
+    }
+
+    private CollectionVersion selectCollectionVersion(Connection connection) throws SQLException {
+        try (PreparedStatement statement = FIND_COLLECTION_VERSION.prepare(connection);
+             ResultSet resultSet = statement.executeQuery()) {
+            if (resultSet.next()) {
+                return new CollectionVersion(resultSet.getLong("change_count"), toOffsetDateTime(resultSet, "changed_at"));
+            }
+            throw new RepositoryException("Product change counter row is missing");
         }
     }
 
     public Product insert(String name, BigDecimal price) {
-        String sql = "INSERT INTO products(name, price) VALUES (?, ?) RETURNING id, created_at, updated_at";
+        long startedAt = System.nanoTime();
         try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
+             PreparedStatement statement = INSERT.prepare(connection)) {
             statement.setString(1, name);
             statement.setBigDecimal(2, price);
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -67,22 +362,33 @@ public class ProductRepository {
                     long id = resultSet.getLong("id");
                     OffsetDateTime createdAt = toOffsetDateTime(resultSet, "created_at");
                     OffsetDateTime updatedAt = toOffsetDateTime(resultSet, "updated_at");
-                    return new Product(id, name, price, createdAt, updatedAt);
+                    long version = resultSet.getLong("version");
+                    return new Product(id, name, price, createdAt, updatedAt, version);
                 }
                 throw new RepositoryException("Insert did not return generated columns");
             }
         } catch (SQLException exception) {
             throw new RepositoryException("Unable to create product", exception);
+        } finally {
+            timers.record("insert", startedAt);
         }
     }
 
-    public Optional<Product> update(long id, String name, BigDecimal price) {
-        String sql = "UPDATE products SET name = ?, price = ? WHERE id = ? RETURNING id, name, price, created_at, updated_at";
+    /**
+     * Updates a product in a single round trip. {@code null} name or price keep the stored value;
+     * when {@code expectedVersion} is given the row is only changed if its version still matches.
+     *
+     * @return the updated row, or empty when the id does not exist or the version did not match
+     */
+    public Optional<Product> update(long id, String name, BigDecimal price, Long expectedVersion) {
+        long startedAt = System.nanoTime();
         try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
+             PreparedStatement statement = UPDATE.prepare(connection)) {
             statement.setString(1, name);
             statement.setBigDecimal(2, price);
             statement.setLong(3, id);
+            statement.setObject(4, expectedVersion, Types.BIGINT);
+            statement.setObject(5, expectedVersion, Types.BIGINT);
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
                     return Optional.of(mapRow(resultSet));
@@ -91,27 +397,370 @@ public class ProductRepository {
             }
         } catch (SQLException exception) {
             throw new RepositoryException("Unable to update product " + id, exception);
+        } finally {
+            timers.record("update", startedAt);
+        }
+    }
+
+    /**
+     * Applies single-product updates, each exactly as {@link #update} would, in order and in one
+     * transaction, so they share one commit. Any failure rolls back all of them.
+     *
+     * @return per update, in the same order, the updated row or empty when the id does not exist
+     *         or the version did not match
+     */
+    public List<Optional<Product>> updateGroup(List<ProductUpdate> updates) {
+        List<Optional<Product>> results = new ArrayList<>(updates.size());
+        long startedAt = System.nanoTime();
+        try (Connection connection = dataSource.getConnection()) {
+            inTransaction(connection, () -> {
+                try (PreparedStatement statement = UPDATE.prepare(connection)) {
+                    for (ProductUpdate update : updates) {
+                        statement.setString(1, update.name());
+                        statement.setBigDecimal(2, update.price());
+                        statement.setLong(3, update.id());
+                        statement.setObject(4, update.expectedVersion(), Types.BIGINT);
+                        statement.setObject(5, update.expectedVersion(), Types.BIGINT);
+                        try (ResultSet resultSet = statement.executeQuery()) {
+                            results.add(resultSet.next() ? Optional.of(mapRow(resultSet)) : Optional.empty());
+                        }
+                    }
+                }
+            });
+            return results;
+        } catch (SQLException exception) {
+            throw new RepositoryException("Unable to update %d products".formatted(updates.size()), exception);
+        } finally {
+            timers.record("updateGroup", startedAt);
+        }
+    }
+
+    /**
+     * Inserts all products in one transaction, using one {@code INSERT ... SELECT FROM unnest}
+     * of two array parameters per chunk. The returned list is in the same order as {@code products}.
+     */
+    public List<Product> insertAll(List<NewProduct> products) {
+        List<Product> created = new ArrayList<>(products.size());
+        long startedAt = System.nanoTime();
+        try (Connection connection = dataSource.getConnection()) {
+            inTransaction(connection, () -> {
+                for (int from = 0; from < products.size(); from += batchChunkSize) {
+                    List<NewProduct> chunk = products.subList(from, Math.min(from + batchChunkSize, products.size()));
+                    try (PreparedStatement statement = INSERT_ALL.prepare(connection)) {
+                        String[] names = new String[chunk.size()];
+                        BigDecimal[] prices = new BigDecimal[chunk.size()];
+                        for (int index = 0; index < names.length; index++) {
+                            names[index] = chunk.get(index).name();
+                            prices[index] = chunk.get(index).price();
+                        }
+                        statement.setArray(1, connection.createArrayOf("text", names));
+                        statement.setArray(2, connection.createArrayOf("numeric", prices));
+                        // RETURNING order is unspecified, the query sorts by input position instead
+                        try (ResultSet resultSet = statement.executeQuery()) {
+                            while (resultSet.next()) {
+                                created.add(mapRow(resultSet));
+                            }
+                        }
+                    }
+                }
+            });
+            if (created.size() != products.size()) {
+                throw new RepositoryException("Batch insert returned %d rows for %d products".formatted(created.size(), products.size()));
+            }
+            return created;
+        } catch (SQLException exception) {
+            throw new RepositoryException("Unable to create products", exception);
+        } finally {
+            timers.record("insertAll", startedAt);
+        }
+    }
+
+    /**
+     * Applies all changes in one transaction with JDBC batching. A {@code null} name or price keeps
+     * the current value. Returns the resulting rows keyed by id; ids that do not exist are absent.
+     */
+    public Map<Long, Product> updateAll(List<ProductChange> changes) {
+        Map<Long, Product> updated = new HashMap<>();
+        long startedAt = System.nanoTime();
+        try (Connection connection = dataSource.getConnection()) {
+            inTransaction(connection, () -> {
+                try (PreparedStatement statement = UPDATE_BATCH.prepare(connection)) {
+                    for (int from = 0; from < changes.size(); from += batchChunkSize) {
+                        for (ProductChange change : changes.subList(from, Math.min(from + batchChunkSize, changes.size()))) {
+                            statement.setString(1, change.name());
+                            statement.setBigDecimal(2, change.price());
+                            statement.setLong(3, change.id());
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    }
+                }
+                List<Long> ids = changes.stream().map(ProductChange::id).distinct().toList();
+                for (Product product : selectByIds(connection, ids)) {
+                    updated.put(product.getId(), product);
+                }
+            });
+            return updated;
+        } catch (SQLException exception) {
+            throw new RepositoryException("Unable to update products", exception);
+        } finally {
+            timers.record("updateAll", startedAt);
+        }
+    }
+
+    /**
+     * Deletes all given ids in one transaction and returns the ids that actually existed.
+     */
+    public Set<Long> deleteAll(List<Long> ids) {
+        Set<Long> deleted = new HashSet<>();
+        long startedAt = System.nanoTime();
+        try (Connection connection = dataSource.getConnection()) {
+            inTransaction(connection, () -> {
+                try (PreparedStatement statement = DELETE_BY_IDS.prepare(connection)) {
+                    for (int from = 0; from < ids.size(); from += batchChunkSize) {
+                        List<Long> chunk = ids.subList(from, Math.min(from + batchChunkSize, ids.size()));
+                        statement.setArray(1, connection.createArrayOf("bigint", chunk.toArray()));
+                        try (ResultSet resultSet = statement.executeQuery()) {
+                            while (resultSet.next()) {
+                                deleted.add(resultSet.getLong(1));
+                            }
+                        }
+                    }
+                }
+            });
+            return deleted;
+        } catch (SQLException exception) {
+            throw new RepositoryException("Unable to delete products", exception);
+        } finally {
+            timers.record("deleteAll", startedAt);
         }
     }
 
+    /**
+     * Loads products through {@code COPY ... FROM STDIN}, pulling rows lazily from {@code rows} so the
+     * input is never held in memory. The copy is a single statement and therefore all-or-nothing.
+     *
+     * @return number of rows inserted
+     */
+    public long copyIn(Iterator<NewProduct> rows) {
+        String sql = "COPY products(name, price) FROM STDIN WITH (FORMAT csv)";
+        long startedAt = System.nanoTime();
+        try (Connection connection = dataSource.getConnection()) {
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            CopyIn copyIn = copyManager.copyIn(sql);
+            try {
+                StringBuilder buffer = new StringBuilder(COPY_BUFFER_CHARS + 256);
+                while (rows.hasNext()) {
+                    NewProduct row = rows.next();
+                    buffer.append('"').append(row.name().replace("\"", "\"\"")).append("\",")
+                        .append(row.price().toPlainString()).append('\n');
+                    if (buffer.length() >= COPY_BUFFER_CHARS) {
+                        writeToCopy(copyIn, buffer);
+                    }
+                }
+                writeToCopy(copyIn, buffer);
+                return copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        } catch (SQLException exception) {
+            throw new RepositoryException("Unable to import products", exception);
+        } finally {
+            timers.record("copyIn", startedAt);
+        }
+    }
+
+    /**
+     * Streams all products as CSV (with header) through {@code COPY ... TO STDOUT}.
+     */
+    public long copyOutCsv(OutputStream out) {
+        return copyOut(
+            "copyOutCsv",
+            "COPY (SELECT id, name, price, created_at, updated_at, version FROM products ORDER BY id) TO STDOUT WITH (FORMAT csv, HEADER true)",
+            out
+        );
+    }
+
+    /**
+     * Streams all products as newline-delimited JSON through {@code COPY ... TO STDOUT}. The JSON is
+     * built by PostgreSQL; CSV mode with control-character quote/delimiter keeps it unescaped.
+     */
+    public long copyOutNdjson(OutputStream out) {
+        return copyOut(
+            "copyOutNdjson",
+            "COPY (SELECT json_build_object('id', id, 'name', name, 'price', price, "
+                + "'createdAt', created_at, 'updatedAt', updated_at, 'version', version) FROM products ORDER BY id) "
+                + "TO STDOUT WITH (FORMAT csv, QUOTE E'\\x01', DELIMITER E'\\x02')",
+            out
+        );
+    }
+
+    private long copyOut(String method, String sql, OutputStream out) {
+        long startedAt = System.nanoTime();
+        try (Connection connection = dataSource.getConnection()) {
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            return copyManager.copyOut(sql, out);
+        } catch (SQLException exception) {
+            throw new RepositoryException("Unable to export products", exception);
+        } catch (IOException exception) {
+            throw new UncheckedIOException("Unable to write product export", exception);
+        } finally {
+            timers.record(method, startedAt);
+        }
+    }
+
+    private static void writeToCopy(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
     public boolean delete(long id) {
-        String sql = "DELETE FROM products WHERE id = ?";
+        return delete(id, null);
+    }
+
+    /**
+     * Deletes a product; when {@code expectedVersion} is given the row is only deleted if its
+     * version still matches.
+     *
+     * @return whether a row was deleted
+     */
+    public boolean delete(long id, Long expectedVersion) {
+        long startedAt = System.nanoTime();
         try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
+             PreparedStatement statement = DELETE.prepare(connection)) {
             statement.setLong(1, id);
+            statement.setObject(2, expectedVersion, Types.BIGINT);
+            statement.setObject(3, expectedVersion, Types.BIGINT);
             return statement.executeUpdate() > 0;
         } catch (SQLException exception) {
             throw new RepositoryException("Unable to delete product " + id, exception);
+        } finally {
+            timers.record("delete", startedAt);
         }
     }
 
-    private Product mapRow(ResultSet resultSet) throws SQLException {
+    private DataSource source(ReadPreference preference) {
+        return preference == ReadPreference.PRIMARY ? dataSource : readDataSource;
+    }
+
+    private List<Product> selectByIds(Connection connection, Collection<Long> ids) throws SQLException {
+        List<Product> products = new ArrayList<>(ids.size());
+        try (PreparedStatement statement = FIND_BY_IDS.prepare(connection)) {
+            statement.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    products.add(mapRow(resultSet));
+                }
+            }
+        }
+        return products;
+    }
+
+    private static String searchSql(ProductSearch search, boolean paged) {
+        List<String> conditions = new ArrayList<>();
+        if (search.text() != null) {
+            conditions.add(switch (search.match()) {
+                // the pattern is lowercased by the same lower() as the indexed name, not by Java
+                case PREFIX -> "lower(name) COLLATE \"C\" LIKE lower(?)";
+                case CONTAINS -> "lower(name) LIKE lower(?)";
+                case FULLTEXT -> "search_vector @@ websearch_to_tsquery('simple', ?)";
+            });
+        }
+        if (search.minPrice() != null) {
+            conditions.add("price >= ?");
+        }
+        if (search.maxPrice() != null) {
+            conditions.add("price <= ?");
+        }
+        if (paged) {
+            conditions.add(switch (search.sort()) {
+                case ID -> "id > ?";
+                case NAME -> "(lower(name) COLLATE \"C\", id) > (lower(?), ?)";
+                case PRICE -> "(price, id) > (?, ?)";
+                case PRICE_DESC -> "(price, id) < (?, ?)";
+            });
+        }
+        String orderBy = switch (search.sort()) {
+            case ID -> "id";
+            case NAME -> "lower(name) COLLATE \"C\", id";
+            case PRICE -> "price, id";
+            case PRICE_DESC -> "price DESC, id DESC";
+        };
+        return "SELECT id, name, price, created_at, updated_at, version FROM products"
+            + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions))
+            + " ORDER BY " + orderBy + " LIMIT ?";
+    }
+
+    private static String searchStatementName(ProductSearch search, boolean paged) {
+        StringJoiner name = new StringJoiner(",", "products.search[", "]");
+        if (search.text() != null) {
+            name.add(search.match().name().toLowerCase(Locale.ROOT));
+        }
+        if (search.minPrice() != null) {
+            name.add("min");
+        }
+        if (search.maxPrice() != null) {
+            name.add("max");
+        }
+        name.add("sort=" + search.sort().name().toLowerCase(Locale.ROOT));
+        if (paged) {
+            name.add("after");
+        }
+        return name.toString();
+    }
+
+    /**
+     * Escapes LIKE wildcards so user input only ever matches literally.
+     */
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private void inTransaction(Connection connection, SqlWork work) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            work.run();
+            connection.commit();
+        } catch (SQLException | RuntimeException exception) {
+            connection.rollback();
+            throw exception;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void closeStream(Connection connection, PreparedStatement statement, ResultSet resultSet) {
+        try (connection; statement; resultSet) {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        } catch (SQLException exception) {
+            throw new RepositoryException("Unable to release product stream", exception);
+        }
+    }
+
+    private void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // the original failure is more useful to the caller
+        }
+    }
+
+    Product mapRow(ResultSet resultSet) throws SQLException {
         long id = resultSet.getLong("id");
         String name = resultSet.getString("name");
         BigDecimal price = resultSet.getBigDecimal("price");
         OffsetDateTime createdAt = toOffsetDateTime(resultSet, "created_at");
         OffsetDateTime updatedAt = toOffsetDateTime(resultSet, "updated_at");
-        return new Product(id, name, price, createdAt, updatedAt);
+        long version = resultSet.getLong("version");
+        return new Product(id, name, price, createdAt, updatedAt, version);
     }
 
     private OffsetDateTime toOffsetDateTime(ResultSet resultSet, String column) throws SQLException {
@@ -122,6 +771,102 @@ public class ProductRepository {
         return resultSet.getTimestamp(column).toInstant().atOffset(ZoneOffset.UTC);
     }
 
+    /**
+     * A product to be inserted by {@link #insertAll(List)}.
+     */
+    public record NewProduct(String name, BigDecimal price) {
+    }
+
+    /**
+     * A change applied by {@link #updateAll(List)}; {@code null} fields are left untouched.
+     */
+    public record ProductChange(long id, String name, BigDecimal price) {
+    }
+
+    /**
+     * A single-product update applied by {@link #updateGroup(List)}; {@code null} fields are left
+     * untouched and a {@code null} {@code expectedVersion} skips the version check.
+     */
+    public record ProductUpdate(long id, String name, BigDecimal price, Long expectedVersion) {
+    }
+
+    /**
+     * How {@link ProductSearch#text()} is matched against product names.
+     */
+    public enum SearchMatch {
+        /** Case-insensitive name prefix. */
+        PREFIX,
+        /** Case-insensitive substring anywhere in the name. */
+        CONTAINS,
+        /** Full-text query over the name's words, in web search syntax. */
+        FULLTEXT
+    }
+
+    /**
+     * Result orders supported by {@link #search(ProductSearch, SearchPosition, int)}; ties are
+     * broken by id.
+     */
+    public enum SearchSort {
+        ID,
+        /** Case-insensitive, by code point. */
+        NAME,
+        PRICE,
+        PRICE_DESC
+    }
+
+    /**
+     * Search filters; {@code null} text or price bounds are not applied.
+     */
+    public record ProductSearch(String text, SearchMatch match, BigDecimal minPrice, BigDecimal maxPrice, SearchSort sort) {
+    }
+
+    /**
+     * Keyset position of the last row of a search page; only the fields of the sort key and the id are used.
+     */
+    public record SearchPosition(long id, String name, BigDecimal price) {
+    }
+
+    /**
+     * Monotonic version of the whole products table and the time it last changed.
+     */
+    public record CollectionVersion(long changeCount, OffsetDateTime changedAt) {
+    }
+
+    /**
+     * The whole table with its version, and the transactions whose changes it already contains
+     * that are still in the change log (at least those committed within the last minute).
+     */
+    public record CollectionSnapshot(CollectionVersion version, Set<Long> loggedTransactions, List<Product> products) {
+    }
+
+    @FunctionalInterface
+    private interface SqlWork {
+        void run() throws SQLException;
+    }
+
+    private final class ResultSetSpliterator extends Spliterators.AbstractSpliterator<Product> {
+
+        private final ResultSet resultSet;
+
+        private ResultSetSpliterator(ResultSet resultSet) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.resultSet = resultSet;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Product> action) {
+            try {
+                if (!resultSet.next()) {
+                    return false;
+                }
+                action.accept(mapRow(resultSet));
+                return true;
+            } catch (SQLException exception) {
+                throw new RepositoryException("Unable to read streamed product", exception);
+            }
+        }
+    }
+
     public static class RepositoryException extends RuntimeException {
         public RepositoryException(String message) {
             super(message);
@@ -1,5 +1,9 @@
 package it.jaiki.repository;
 
+import it.jaiki.db.ReadPreference;
+import it.jaiki.db.StatementRegistry;
+import it.jaiki.db.StatementRegistry.StatementShape;
+import it.jaiki.metrics.MethodTimers;
 import it.jaiki.model.User;
 import it.jaiki.security.Role;
 
@@ -14,19 +18,45 @@ import java.util.Optional;
 
 /**
  * Provides JDBC access to the users table.
+ *
+ * <p>Lookups go to {@code readDataSource} (a replica, when configured) unless the caller asks for
+ * {@link ReadPreference#PRIMARY}; inserts use the primary.
  */
 public class UserRepository {
 
+    private static final StatementShape FIND_BY_USERNAME = StatementRegistry.registerHot(
+        "users.findByUsername", "SELECT id, username, password_hash, role, created_at FROM users WHERE username = ?");
+    private static final StatementShape FIND_BY_ID = StatementRegistry.registerHot(
+        "users.findById", "SELECT id, username, password_hash, role, created_at FROM users WHERE id = ?");
+    private static final StatementShape INSERT = StatementRegistry.register(
+        "users.insert", "INSERT INTO users(username, password_hash, role) VALUES (?, ?, ?) RETURNING id, username, password_hash, role, created_at");
+
     private final DataSource dataSource;
+    private final DataSource readDataSource;
+    private final MethodTimers timers;
 
     public UserRepository(DataSource dataSource) {
+        this(dataSource, MethodTimers.global("users"));
+    }
+
+    public UserRepository(DataSource dataSource, MethodTimers timers) {
+        this(dataSource, dataSource, timers);
+    }
+
+    public UserRepository(DataSource dataSource, DataSource readDataSource, MethodTimers timers) {
         this.dataSource = dataSource;
+        this.readDataSource = readDataSource;
+        this.timers = timers;
     }
 
     public Optional<User> findByUsername(String username) {
-        String sql = "SELECT id, username, password_hash, role, created_at FROM users WHERE username = ?";
-        try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
+        return findByUsername(username, ReadPreference.REPLICA);
+    }
+
+    public Optional<User> findByUsername(String username, ReadPreference preference) {
+        long startedAt = System.nanoTime();
+        try (Connection connection = source(preference).getConnection();
+             PreparedStatement statement = FIND_BY_USERNAME.prepare(connection)) {
             statement.setString(1, username);
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
@@ -36,13 +66,19 @@ public class UserRepository {
             }
         } catch (SQLException exception) {
             throw new RepositoryException("Unable to load user with username " + username, exception);
+        } finally {
+            timers.record("findByUsername", startedAt);
         }
     }
 
     public Optional<User> findById(long id) {
-        String sql = "SELECT id, username, password_hash, role, created_at FROM users WHERE id = ?";
-        try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
+        return findById(id, ReadPreference.REPLICA);
+    }
+
+    public Optional<User> findById(long id, ReadPreference preference) {
+        long startedAt = System.nanoTime();
+        try (Connection connection = source(preference).getConnection();
+             PreparedStatement statement = FIND_BY_ID.prepare(connection)) {
             statement.setLong(1, id);
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
@@ -52,13 +88,15 @@ public class UserRepository {
             }
         } catch (SQLException exception) {
             throw new RepositoryException("Unable to load user with id " + id, exception);
+        } finally {
+            timers.record("findById", startedAt);
         }
     }
 
     public User insert(String username, String passwordHash, Role role) {
-        String sql = "INSERT INTO users(username, password_hash, role) VALUES (?, ?, ?) RETURNING id, username, password_hash, role, created_at";
+        long startedAt = System.nanoTime();
         try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
+             PreparedStatement statement = INSERT.prepare(connection)) {
             statement.setString(1, username);
             statement.setString(2, passwordHash);
             statement.setString(3, role.name());
@@ -70,9 +108,15 @@ public class UserRepository {
             }
         } catch (SQLException exception) {
             throw new RepositoryException("Unable to create user", exception);
+        } finally {
+            timers.record("insert", startedAt);
         }
     }
 
+    private DataSource source(ReadPreference preference) {
+        return preference == ReadPreference.PRIMARY ? dataSource : readDataSource;
+    }
+
     private User mapRow(ResultSet resultSet) throws SQLException {
         long id = resultSet.getLong("id");
         String username = resultSet.getString("username");
@@ -5,28 +5,61 @@ import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.auth0.jwt.interfaces.JWTVerifier;
+import it.jaiki.cache.BoundedCache;
+import it.jaiki.cache.CacheStats;
+import it.jaiki.config.AppConfig;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Base64;
 
 /**
  * Small utility to issue and verify JWT tokens.
+ *
+ * <p>The signing algorithm and verifier are built once and swapped atomically by {@link #reload(String)}.
+ * Successfully verified tokens are remembered (keyed by their SHA-256 digest) until they expire,
+ * so repeated Bearer requests skip signature verification and claim decoding.
  */
 public final class JwtUtil {
 
     private static final String DEFAULT_SECRET = "change-me-at-least-32-chars";
+    private static final int MIN_SECRET_LENGTH = 32;
     private static final long DEFAULT_EXPIRATION_HOURS = 24;
+    private static final Duration MAX_CACHE_TTL = Duration.ofMinutes(5);
+
+    private static final BoundedCache<String, VerifiedToken> VERIFIED_TOKENS = new BoundedCache<>(
+        "jwt",
+        AppConfig.getInt("JWT_CACHE_MAX_SIZE", 10_000),
+        JwtUtil::cacheTtl
+    );
+
+    private static volatile Signer signer = createSigner(AppConfig.get("DEFAULT_JWT_SECRET", DEFAULT_SECRET));
 
     private JwtUtil() {
     }
 
-    private static String jwtSecret() {
-        String env = System.getenv("DEFAULT_JWT_SECRET");
-        return env == null || env.isBlank() ? DEFAULT_SECRET : env;
+    /**
+     * Replaces the algorithm and verifier with ones built from {@code secret}. Tokens signed with the
+     * previous secret stop verifying, including those already cached: the cache is cleared after the
+     * swap, and a verification that started before it is never stored.
+     */
+    public static void reload(String secret) {
+        if (secret == null || secret.length() < MIN_SECRET_LENGTH) {
+            throw new IllegalArgumentException("JWT secret must be at least " + MIN_SECRET_LENGTH + " characters");
+        }
+        signer = createSigner(secret);
+        VERIFIED_TOKENS.invalidateAll();
+    }
+
+    public static CacheStats cacheStats() {
+        return VERIFIED_TOKENS.stats();
     }
 
     public static String generateToken(AuthenticatedUser user) {
-        Algorithm algorithm = Algorithm.HMAC256(jwtSecret());
         Instant now = Instant.now();
         return JWT.create()
             .withIssuedAt(now)
@@ -34,21 +67,52 @@ public final class JwtUtil {
             .withClaim("id", user.id())
             .withClaim("username", user.username())
             .withClaim("role", user.role().name())
-            .sign(algorithm);
+            .sign(signer.algorithm());
     }
 
     public static AuthenticatedUser parseToken(String token) {
+        return VERIFIED_TOKENS.get(digest(token), key -> verify(token)).user();
+    }
+
+    private static VerifiedToken verify(String token) {
         try {
-            Algorithm algorithm = Algorithm.HMAC256(jwtSecret());
-            JWTVerifier verifier = JWT.require(algorithm).build();
-            DecodedJWT jwt = verifier.verify(token);
+            DecodedJWT jwt = signer.verifier().verify(token);
             long id = jwt.getClaim("id").asLong();
             String username = jwt.getClaim("username").asString();
             String roleStr = jwt.getClaim("role").asString();
             Role role = Role.valueOf(roleStr);
-            return new AuthenticatedUser(id, username, role);
-        } catch (JWTVerificationException | IllegalArgumentException e) {
+            Instant expiresAt = jwt.getExpiresAtAsInstant();
+            return new VerifiedToken(new AuthenticatedUser(id, username, role), expiresAt);
+        } catch (JWTVerificationException | IllegalArgumentException | NullPointerException e) {
             throw new RuntimeException("Invalid JWT token", e);
         }
     }
+
+    private static Duration cacheTtl(VerifiedToken token) {
+        if (token.expiresAt() == null) {
+            return MAX_CACHE_TTL;
+        }
+        Duration remaining = Duration.between(Instant.now(), token.expiresAt());
+        return remaining.compareTo(MAX_CACHE_TTL) < 0 ? remaining : MAX_CACHE_TTL;
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static Signer createSigner(String secret) {
+        Algorithm algorithm = Algorithm.HMAC256(secret);
+        return new Signer(algorithm, JWT.require(algorithm).build());
+    }
+
+    private record Signer(Algorithm algorithm, JWTVerifier verifier) {
+    }
+
+    private record VerifiedToken(AuthenticatedUser user, Instant expiresAt) {
+    }
 }
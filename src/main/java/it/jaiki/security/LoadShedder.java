@@ -0,0 +1,184 @@
+package it.jaiki.security;
+
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.ServiceUnavailableResponse;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Global limit on concurrent requests that adapts to their latency and rejects the excess with
+ * {@code 503}.
+ *
+ * <p>Latencies of completed requests are averaged per route over short windows, since routes
+ * differ by orders of magnitude (an index read against a password hash). A route's lowest window
+ * average is its baseline; the baseline drifts slowly towards the observed latency, so a lasting
+ * change in the workload does not pin the limit to its minimum. When routes accounting for most of
+ * a window's measured requests average more than {@code tolerance} times their baseline, requests
+ * are queueing somewhere (usually for database connections) and the limit shrinks by a tenth.
+ * Otherwise it grows by one whenever the window used more than half of it. Routes with fewer than
+ * {@value #MIN_ROUTE_SAMPLES} requests keep accumulating into the next window, and requests
+ * admitted without a route (streams, imports, work handed to other executors) hold a slot but are
+ * not measured. The hot path is a compare-and-set on the in-flight count plus two adders; the
+ * window is closed by whichever request first sees it expire.
+ */
+public final class LoadShedder {
+
+    private static final String ADMITTED_ATTRIBUTE = "load-shedder-admitted";
+    private static final String ROUTE_ATTRIBUTE = "load-shedder-route";
+    private static final long WINDOW_NANOS = Duration.ofMillis(100).toNanos();
+    private static final int BASELINE_DRIFT_DIVISOR = 100;
+    private static final int MIN_ROUTE_SAMPLES = 10;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    private final AtomicLong windowStartedAt = new AtomicLong(System.nanoTime());
+    private final AtomicInteger windowPeak = new AtomicInteger();
+    /** Keyed by route template, so the number of entries is bounded by the registered routes. */
+    private final ConcurrentHashMap<String, RouteLatency> routes = new ConcurrentHashMap<>();
+
+    private final LongAdder shed = new LongAdder();
+
+    public LoadShedder(int minLimit, int maxLimit, double tolerance) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Load shedding limits must satisfy 1 <= min <= max");
+        }
+        if (tolerance <= 1.0) {
+            throw new IllegalArgumentException("Latency tolerance must be greater than 1");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.limit = maxLimit;
+    }
+
+    /**
+     * Admits the request or throws {@link ServiceUnavailableResponse} with {@code Retry-After}. An
+     * admitted request must be {@link #complete completed}.
+     *
+     * @param route the route its latency is compared within, or {@code null} to not measure it
+     */
+    public void admit(Context ctx, String route) {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                shed.increment();
+                ctx.header(Header.RETRY_AFTER, "1");
+                throw new ServiceUnavailableResponse("Server is overloaded, retry later");
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                windowPeak.accumulateAndGet(current + 1, Math::max);
+                ctx.attribute(ADMITTED_ATTRIBUTE, Boolean.TRUE);
+                if (route != null) {
+                    ctx.attribute(ROUTE_ATTRIBUTE, route);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Request logger callback; releases the slot of an admitted request and records its latency.
+     */
+    public void complete(Context ctx, float executionTimeMs) {
+        if (ctx.attribute(ADMITTED_ATTRIBUTE) == null) {
+            return;
+        }
+        inFlight.decrementAndGet();
+        String route = ctx.attribute(ROUTE_ATTRIBUTE);
+        if (route != null) {
+            routes.computeIfAbsent(route, ignored -> new RouteLatency()).record((long) (executionTimeMs * 1_000_000L));
+        }
+
+        long startedAt = windowStartedAt.get();
+        long now = System.nanoTime();
+        if (now - startedAt >= WINDOW_NANOS && windowStartedAt.compareAndSet(startedAt, now)) {
+            closeWindow();
+        }
+    }
+
+    private void closeWindow() {
+        int peak = windowPeak.getAndSet(inFlight.get());
+        long measured = 0;
+        long congested = 0;
+        for (RouteLatency route : routes.values()) {
+            long samples = route.samples.sum();
+            if (samples < MIN_ROUTE_SAMPLES) {
+                continue;
+            }
+            if (route.closeWindow(tolerance)) {
+                congested += samples;
+            }
+            measured += samples;
+        }
+        if (measured == 0) {
+            return;
+        }
+
+        int current = limit;
+        if (congested * 2 > measured) {
+            limit = Math.max(minLimit, (int) (current * 0.9));
+        } else if (peak * 2 > current) {
+            limit = Math.min(maxLimit, current + 1);
+        }
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public long shed() {
+        return shed.sum();
+    }
+
+    /**
+     * One route's latency window and baseline; the baseline is only written by the thread that
+     * closes a window.
+     */
+    private static final class RouteLatency {
+
+        private final LongAdder latencyNanos = new LongAdder();
+        private final LongAdder samples = new LongAdder();
+        private volatile long baselineNanos = Long.MAX_VALUE;
+
+        void record(long nanos) {
+            latencyNanos.add(nanos);
+            samples.increment();
+        }
+
+        /**
+         * Folds the window into the baseline.
+         *
+         * @return whether the window averaged more than {@code tolerance} times the baseline
+         */
+        boolean closeWindow(double tolerance) {
+            long count = samples.sumThenReset();
+            long latency = latencyNanos.sumThenReset();
+            if (count == 0) {
+                return false;
+            }
+            long average = latency / count;
+            long baseline = baselineNanos;
+            if (average < baseline) {
+                baseline = average;
+            } else {
+                baseline += (average - baseline) / BASELINE_DRIFT_DIVISOR;
+            }
+            baselineNanos = baseline;
+            return average > baseline * tolerance;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package it.jaiki.security;
+
+import io.javalin.security.RouteRole;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-client request budgets, enforced with lock-free token buckets.
+ *
+ * <p>Each bucket is a single {@link AtomicLong} holding the theoretical arrival time of the next
+ * request (the generic cell rate algorithm): a request is admitted when that time is at most
+ * {@code burst} emission intervals ahead of now, and admitting it moves the time forward by one
+ * interval with a compare-and-set. A bucket whose time has passed is full, so idle buckets carry no
+ * information. At most about {@code maxClients} buckets are tracked: a new client first evicts the
+ * longest-tracked full bucket, scanning a few buckets in insertion order and sending busy ones to
+ * the back of the queue, so the cost per new client is constant.
+ *
+ * <p>The budget of a request follows the roles of its route: admin-only routes, routes for signed-in
+ * users and public routes each have their own, and the anonymous endpoints under
+ * {@code /api/auth/} (password hashing) have a stricter one.
+ */
+public final class RateLimiter {
+
+    private static final String AUTH_PATH_PREFIX = "/api/auth/";
+    private static final int EVICTION_SCAN = 8;
+
+    private final Budget publicBudget;
+    private final Budget userBudget;
+    private final Budget adminBudget;
+    private final Budget authBudget;
+    private final int maxClients;
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    /** Every tracked key once, oldest first; busy keys are re-queued at the back when scanned. */
+    private final ConcurrentLinkedQueue<String> evictionOrder = new ConcurrentLinkedQueue<>();
+    private final LongAdder evictions = new LongAdder();
+
+    public RateLimiter(Budget publicBudget, Budget userBudget, Budget adminBudget, Budget authBudget, int maxClients) {
+        this.publicBudget = publicBudget;
+        this.userBudget = userBudget;
+        this.adminBudget = adminBudget;
+        this.authBudget = authBudget;
+        this.maxClients = maxClients;
+    }
+
+    public Budget budgetFor(Set<RouteRole> routeRoles, String routePath) {
+        if (routeRoles.contains(Role.PUBLIC)) {
+            return routePath.startsWith(AUTH_PATH_PREFIX) ? authBudget : publicBudget;
+        }
+        return routeRoles.contains(Role.USER) ? userBudget : adminBudget;
+    }
+
+    /**
+     * Takes one request from {@code client}'s bucket for {@code budget}.
+     *
+     * @return {@code 0} if the request is admitted, otherwise the nanoseconds until it would be
+     */
+    public long tryAcquire(Budget budget, String client) {
+        if (budget.disabled()) {
+            return 0;
+        }
+        String key = budget.name() + '|' + client;
+        AtomicLong bucket = buckets.get(key);
+        long now = System.nanoTime();
+        if (bucket == null) {
+            if (buckets.size() >= maxClients) {
+                evictOne(now);
+            }
+            bucket = buckets.computeIfAbsent(key, created -> {
+                evictionOrder.add(created);
+                return new AtomicLong(Long.MIN_VALUE);
+            });
+        }
+        while (true) {
+            long arrival = bucket.get();
+            long earliest = arrival == Long.MIN_VALUE ? now : Math.max(arrival, now);
+            long wait = earliest - budget.toleranceNanos() - now;
+            if (wait > 0) {
+                budget.rejected.increment();
+                return wait;
+            }
+            if (bucket.compareAndSet(arrival, earliest + budget.intervalNanos())) {
+                return 0;
+            }
+        }
+    }
+
+    public List<Budget> budgets() {
+        return List.of(publicBudget, userBudget, adminBudget, authBudget);
+    }
+
+    public int trackedClients() {
+        return buckets.size();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Removes the oldest full bucket among the next few in line, or the last one scanned if all of
+     * them are busy.
+     */
+    private void evictOne(long now) {
+        for (int scanned = 1; scanned <= EVICTION_SCAN; scanned++) {
+            String key = evictionOrder.poll();
+            if (key == null) {
+                return;
+            }
+            AtomicLong bucket = buckets.get(key);
+            long arrival = bucket == null ? Long.MIN_VALUE : bucket.get();
+            if (arrival == Long.MIN_VALUE || arrival - now <= 0 || scanned == EVICTION_SCAN) {
+                if (buckets.remove(key) != null) {
+                    evictions.increment();
+                }
+                return;
+            }
+            evictionOrder.add(key);
+        }
+    }
+
+    /**
+     * A sustained rate with a burst allowance; a non-positive rate disables the budget.
+     */
+    public static final class Budget {
+
+        private final String name;
+        private final long intervalNanos;
+        private final long toleranceNanos;
+        private final LongAdder rejected = new LongAdder();
+
+        public Budget(String name, double requestsPerSecond, int burst) {
+            this.name = name;
+            this.intervalNanos = requestsPerSecond <= 0 ? 0 : Math.max(1, (long) (1_000_000_000L / requestsPerSecond));
+            this.toleranceNanos = intervalNanos * Math.max(0, burst - 1);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public long rejected() {
+            return rejected.sum();
+        }
+
+        boolean disabled() {
+            return intervalNanos == 0;
+        }
+
+        long intervalNanos() {
+            return intervalNanos;
+        }
+
+        long toleranceNanos() {
+            return toleranceNanos;
+        }
+    }
+}
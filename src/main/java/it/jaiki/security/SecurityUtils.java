@@ -1,26 +1,78 @@
 package it.jaiki.security;
 
 import io.javalin.http.Context;
+import io.javalin.security.RouteRole;
+import it.jaiki.config.AppConfig;
+
+import java.util.Set;
 
 /**
  * Session helper methods for working with authenticated users.
+ *
+ * <p>When {@code AUTH_STATELESS} is enabled, Bearer principals only live in request attributes
+ * and sessions are created solely for clients that ask for cookie authentication.
  */
 public final class SecurityUtils {
 
     private static final String CURRENT_USER_SESSION_KEY = "current-user";
+    private static final String CURRENT_USER_REQUEST_KEY = "currentUser";
+    private static final String SESSION_QUERY_PARAM = "session";
+    private static final boolean STATELESS = AppConfig.getBoolean("AUTH_STATELESS", false);
 
     private SecurityUtils() {
     }
 
+    public static boolean isStateless() {
+        return STATELESS;
+    }
+
     public static void storeCurrentUser(Context context, AuthenticatedUser user) {
-        context.sessionAttribute(CURRENT_USER_SESSION_KEY, user);
+        context.attribute(CURRENT_USER_REQUEST_KEY, user);
+        if (wantsSession(context)) {
+            context.sessionAttribute(CURRENT_USER_SESSION_KEY, user);
+        }
+    }
+
+    /**
+     * Stores a principal resolved from a Bearer token. In stateless mode this never touches the session.
+     */
+    public static void storeBearerUser(Context context, AuthenticatedUser user) {
+        context.attribute(CURRENT_USER_REQUEST_KEY, user);
+        if (!STATELESS) {
+            context.sessionAttribute(CURRENT_USER_SESSION_KEY, user);
+        }
     }
 
     public static void clearCurrentUser(Context context) {
-        context.sessionAttribute(CURRENT_USER_SESSION_KEY, null);
+        context.attribute(CURRENT_USER_REQUEST_KEY, null);
+        // avoid creating a session just to clear it
+        if (context.req().getSession(false) != null) {
+            context.sessionAttribute(CURRENT_USER_SESSION_KEY, null);
+        }
     }
 
     public static AuthenticatedUser getCurrentUser(Context context) {
+        AuthenticatedUser requestUser = context.attribute(CURRENT_USER_REQUEST_KEY);
+        if (requestUser != null) {
+            return requestUser;
+        }
         return context.sessionAttribute(CURRENT_USER_SESSION_KEY);
     }
+
+    /**
+     * Returns whether the user's role is one of the roles permitted on the matched route.
+     */
+    public static boolean hasPermittedRole(Set<RouteRole> permittedRoles, AuthenticatedUser user) {
+        return permittedRoles.stream()
+            .map(role -> (Role) role)
+            .anyMatch(role -> role == user.role());
+    }
+
+    private static boolean wantsSession(Context context) {
+        if (!STATELESS) {
+            return true;
+        }
+        return context.req().getSession(false) != null
+            || Boolean.parseBoolean(context.queryParam(SESSION_QUERY_PARAM));
+    }
 }
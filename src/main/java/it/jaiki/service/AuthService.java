@@ -1,5 +1,6 @@
 package it.jaiki.service;
 
+import it.jaiki.db.ReadPreference;
 import it.jaiki.model.User;
 import it.jaiki.model.request.UserLoginRequest;
 import it.jaiki.model.request.UserRegistrationRequest;
@@ -11,6 +12,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Handles user registration and authentication flows.
@@ -21,50 +23,70 @@ public class AuthService {
     private static final Logger LOGGER = LoggerFactory.getLogger(AuthService.class);
 
     private final UserRepository userRepository;
+    private final HashingExecutor hashingExecutor;
 
-    public AuthService(UserRepository userRepository) {
+    public AuthService(UserRepository userRepository, HashingExecutor hashingExecutor) {
         this.userRepository = userRepository;
+        this.hashingExecutor = hashingExecutor;
     }
 
-    public UserResponse register(UserRegistrationRequest request) {
+    /**
+     * Validates and registers a user. Hashing and the insert run on the hashing pool; the returned
+     * future fails with {@link HashingExecutor.SaturatedException} when that pool is full.
+     */
+    public CompletableFuture<UserResponse> register(UserRegistrationRequest request) {
         String username = normalizeUsername(request.getUsername());
         String password = request.getPassword();
 
         validateUsername(username);
         validatePassword(password);
 
-        Optional<User> existing = userRepository.findByUsername(username);
+        // checked on the primary: a lagging replica would let a just-registered name through to the insert
+        Optional<User> existing = userRepository.findByUsername(username, ReadPreference.PRIMARY);
         if (existing.isPresent()) {
             throw new DuplicateUserException("Username '%s' is already taken".formatted(username));
         }
 
-        String passwordHash = hashPassword(username, password);
-        User user = userRepository.insert(username, passwordHash, Role.USER);
-        return toResponse(user);
+        return hashingExecutor.submit(() -> hashPassword(username, password))
+            .thenApply(passwordHash -> toResponse(userRepository.insert(username, passwordHash, Role.USER)));
     }
 
-    public UserResponse login(UserLoginRequest request) {
+    /**
+     * Validates credentials. The BCrypt comparison runs on the hashing pool.
+     */
+    public CompletableFuture<UserResponse> login(UserLoginRequest request) {
         String username = normalizeUsername(request.getUsername());
         String password = request.getPassword();
 
         validateUsername(username);
         validatePassword(password);
 
-        Optional<User> existing = userRepository.findByUsername(username);
+        Optional<User> existing = findByUsername(username);
         if (existing.isEmpty()) {
             throw new AuthenticationException("Invalid credentials");
         }
 
         User user = existing.get();
-        if (!isPasswordValid(username, password, user.getPasswordHash())) {
-            throw new AuthenticationException("Invalid credentials");
-        }
+        return hashingExecutor.submit(() -> isPasswordValid(username, password, user.getPasswordHash()))
+            .thenApply(valid -> {
+                if (!valid) {
+                    throw new AuthenticationException("Invalid credentials");
+                }
+                return toResponse(user);
+            });
+    }
 
-        return toResponse(user);
+    public HashingExecutor.Stats hashingStats() {
+        return hashingExecutor.stats();
     }
 
     public Optional<UserResponse> findUser(long id) {
-        return userRepository.findById(id).map(this::toResponse);
+        Optional<User> user = userRepository.findById(id);
+        if (user.isEmpty()) {
+            // the account may be newer than the replica
+            user = userRepository.findById(id, ReadPreference.PRIMARY);
+        }
+        return user.map(this::toResponse);
     }
 
     public void ensureAdminUser(String username, String password) {
@@ -72,7 +94,7 @@ public class AuthService {
         validateUsername(normalizedUsername);
         validatePassword(password);
 
-        Optional<User> existing = userRepository.findByUsername(normalizedUsername);
+        Optional<User> existing = userRepository.findByUsername(normalizedUsername, ReadPreference.PRIMARY);
         if (existing.isPresent()) {
             if (existing.get().getRole() != Role.ADMIN) {
                 LOGGER.warn("Admin seed skipped because username '{}' is already used by a non-admin account", normalizedUsername);
@@ -87,6 +109,18 @@ public class AuthService {
         LOGGER.info("Seeded default admin account '{}'", normalizedUsername);
     }
 
+    /**
+     * Looks the user up on the replica and confirms misses on the primary, so an account can log
+     * in right after registering even while the replica lags.
+     */
+    private Optional<User> findByUsername(String username) {
+        Optional<User> user = userRepository.findByUsername(username);
+        if (user.isEmpty()) {
+            return userRepository.findByUsername(username, ReadPreference.PRIMARY);
+        }
+        return user;
+    }
+
     private String normalizeUsername(String username) {
         return username == null ? null : username.trim();
     }
@@ -0,0 +1,134 @@
+package it.jaiki.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Dedicated, bounded pool for CPU-heavy password hashing.
+ *
+ * <p>Keeps BCrypt work off the HTTP request threads. When every worker is busy and the queue is
+ * full, submissions fail fast with {@link SaturatedException} instead of piling up.
+ */
+public final class HashingExecutor implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HashingExecutor.class);
+
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder totalQueueNanos = new LongAdder();
+    private final LongAdder totalHashNanos = new LongAdder();
+    private final AtomicLong maxHashNanos = new AtomicLong();
+
+    public HashingExecutor(int threads, int queueCapacity) {
+        if (threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Hashing pool needs at least one thread and one queue slot");
+        }
+        this.queueCapacity = queueCapacity;
+        this.executor = new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            new NamedThreadFactory(),
+            new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        long enqueuedAt = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long startedAt = System.nanoTime();
+                totalQueueNanos.add(startedAt - enqueuedAt);
+                try {
+                    return task.get();
+                } finally {
+                    long elapsed = System.nanoTime() - startedAt;
+                    totalHashNanos.add(elapsed);
+                    maxHashNanos.accumulateAndGet(elapsed, Math::max);
+                    completed.increment();
+                }
+            }, executor);
+        } catch (RejectedExecutionException exception) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(new SaturatedException("Authentication is temporarily overloaded, retry shortly"));
+        }
+    }
+
+    public Stats stats() {
+        long done = completed.sum();
+        return new Stats(
+            executor.getMaximumPoolSize(),
+            executor.getActiveCount(),
+            executor.getQueue().size(),
+            queueCapacity,
+            done,
+            rejected.sum(),
+            done == 0 ? 0.0 : totalQueueNanos.sum() / 1_000_000.0 / done,
+            done == 0 ? 0.0 : totalHashNanos.sum() / 1_000_000.0 / done,
+            maxHashNanos.get() / 1_000_000.0
+        );
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOGGER.warn("Hashing pool did not drain within 5s, {} tasks dropped", executor.shutdownNow().size());
+            }
+        } catch (InterruptedException exception) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Snapshot of pool occupancy and latency, in milliseconds.
+     */
+    public record Stats(
+        int threads,
+        int activeThreads,
+        int queueDepth,
+        int queueCapacity,
+        long completed,
+        long rejected,
+        double averageQueueMillis,
+        double averageHashMillis,
+        double maxHashMillis
+    ) {
+    }
+
+    public static class SaturatedException extends RuntimeException {
+        public SaturatedException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "auth-hashing-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
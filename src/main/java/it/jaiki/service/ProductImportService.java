@@ -0,0 +1,222 @@
+package it.jaiki.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.jaiki.model.response.ProductImportResponse;
+import it.jaiki.repository.ProductRepository;
+import it.jaiki.repository.ProductRepository.NewProduct;
+import it.jaiki.service.ProductService.ValidationException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * High-volume product import/export backed by PostgreSQL {@code COPY}.
+ *
+ * <p>Input is parsed and validated line by line with the same rules as {@link ProductService};
+ * invalid lines are skipped and reported, valid ones are streamed straight into the copy.
+ */
+public class ProductImportService {
+
+    public static final int MAX_REPORTED_ERRORS = 100;
+
+    private final ProductRepository repository;
+    private final ProductService productService;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public ProductImportService(ProductRepository repository, ProductService productService) {
+        this.repository = repository;
+        this.productService = productService;
+    }
+
+    public ProductImportResponse importProducts(InputStream input, Format format) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        ValidatingIterator rows = new ValidatingIterator(reader, format);
+        long imported = repository.copyIn(rows);
+        productService.invalidateCache();
+        return new ProductImportResponse(imported, rows.rejected, rows.errors);
+    }
+
+    public long exportProducts(OutputStream output, Format format) {
+        return switch (format) {
+            case CSV -> repository.copyOutCsv(output);
+            case NDJSON -> repository.copyOutNdjson(output);
+        };
+    }
+
+    private NewProduct parse(String line, Format format) {
+        return switch (format) {
+            case CSV -> parseCsv(line);
+            case NDJSON -> parseJson(line);
+        };
+    }
+
+    private NewProduct parseCsv(String line) {
+        List<String> fields = splitCsv(line);
+        if (fields.size() != 2) {
+            throw new ValidationException("Expected 2 columns (name,price) but found " + fields.size());
+        }
+        return toProduct(fields.get(0), parsePrice(fields.get(1).trim()));
+    }
+
+    private NewProduct parseJson(String line) {
+        try {
+            JsonNode node = mapper.readTree(line);
+            if (node == null || !node.isObject()) {
+                throw new ValidationException("Expected a JSON object");
+            }
+            JsonNode name = node.get("name");
+            JsonNode price = node.get("price");
+            return toProduct(
+                name == null || name.isNull() ? null : name.asText(),
+                price == null || price.isNull() ? null : parsePrice(price.asText())
+            );
+        } catch (JsonProcessingException exception) {
+            throw new ValidationException("Malformed JSON: " + exception.getOriginalMessage());
+        }
+    }
+
+    private NewProduct toProduct(String name, BigDecimal price) {
+        String trimmed = name == null ? null : name.trim();
+        ProductService.validateName(trimmed);
+        ProductService.validatePrice(price);
+        return new NewProduct(trimmed, price);
+    }
+
+    private BigDecimal parsePrice(String value) {
+        if (value.isEmpty()) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value);
+        } catch (NumberFormatException exception) {
+            throw new ValidationException("Product price '%s' is not a number".formatted(value));
+        }
+    }
+
+    /**
+     * Splits one RFC 4180 line; quoted fields may contain commas and doubled quotes but not line breaks.
+     */
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>(2);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new ValidationException("Unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    public enum Format {
+        CSV,
+        NDJSON;
+
+        public static Format parse(String value) {
+            if (value == null || value.isBlank()) {
+                return CSV;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException exception) {
+                throw new ValidationException("Unsupported format '%s', expected csv or ndjson".formatted(value));
+            }
+        }
+
+        public String contentType() {
+            return this == CSV ? "text/csv" : "application/x-ndjson";
+        }
+    }
+
+    private final class ValidatingIterator implements Iterator<NewProduct> {
+
+        private final BufferedReader reader;
+        private final Format format;
+        private final List<ProductImportResponse.LineError> errors = new ArrayList<>();
+        private long lineNumber;
+        private long rejected;
+        private NewProduct next;
+
+        private ValidatingIterator(BufferedReader reader, Format format) {
+            this.reader = reader;
+            this.format = format;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                String line = readLine();
+                if (line == null) {
+                    return false;
+                }
+                lineNumber++;
+                if (line.isBlank() || (lineNumber == 1 && isCsvHeader(line))) {
+                    continue;
+                }
+                try {
+                    next = parse(line, format);
+                } catch (ValidationException exception) {
+                    rejected++;
+                    if (errors.size() < MAX_REPORTED_ERRORS) {
+                        errors.add(new ProductImportResponse.LineError(lineNumber, exception.getMessage()));
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public NewProduct next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            NewProduct current = next;
+            next = null;
+            return current;
+        }
+
+        private boolean isCsvHeader(String line) {
+            return format == Format.CSV && line.replace(" ", "").equalsIgnoreCase("name,price");
+        }
+
+        private String readLine() {
+            try {
+                return reader.readLine();
+            } catch (IOException exception) {
+                throw new UncheckedIOException("Unable to read import input", exception);
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package it.jaiki.service;
+
+import it.jaiki.cache.ProductSnapshot;
+import it.jaiki.db.ChangeFeed;
+import it.jaiki.db.ReadPreference;
+import it.jaiki.model.Product;
+import it.jaiki.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a copy-on-write {@link ProductSnapshot} of the products table in memory.
+ *
+ * <p>The snapshot is loaded when the change feed subscribes and refreshed from the ids that
+ * {@code notify_products_changed} publishes after every committed write; changed rows are re-read
+ * from the primary and merged into a new snapshot. The collection version counts committed
+ * changing transactions, so the snapshot's version advances by one for each transaction whose
+ * notifications it applies, unless the load it started from already contained that transaction.
+ * Every {@code reconcileInterval} the whole table is reloaded, which also repairs anything a lost
+ * notification left behind. All refreshes run on
+ * the feed thread; readers only read the volatile snapshot. The index is not {@link #isReady()
+ * ready} until the first load and whenever the feed is disconnected, so callers can fall back to
+ * the database rather than serve an unbounded stale copy.
+ */
+public final class ProductIndex implements ChangeFeed.Listener, AutoCloseable {
+
+    public static final String CHANNEL = "products_changed";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProductIndex.class);
+    private static final String RELOAD_PAYLOAD = "*";
+    private static final Duration POLL_INTERVAL = Duration.ofSeconds(1);
+    private static final Duration RETRY_INTERVAL = Duration.ofSeconds(5);
+
+    private final ProductRepository repository;
+    private final long reconcileIntervalNanos;
+    private final ChangeFeed feed;
+
+    private volatile ProductSnapshot snapshot = ProductSnapshot.empty();
+    private volatile boolean ready;
+    /** Only touched on the feed thread. */
+    private long lastReloadNanos;
+    /** Transactions the last load already contained; only touched on the feed thread. */
+    private Set<Long> loadedTransactions = Set.of();
+    /** Transaction of the last applied notification; only touched on the feed thread. */
+    private long lastTransaction = -1;
+
+    private final LongAdder changeBatches = new LongAdder();
+    private final LongAdder changedIds = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder reconciliationDifferences = new LongAdder();
+
+    public ProductIndex(ProductRepository repository, ChangeFeed.ConnectionOpener opener, Duration reconcileInterval) {
+        this.repository = repository;
+        this.reconcileIntervalNanos = reconcileInterval.toNanos();
+        this.feed = new ChangeFeed(CHANNEL, opener, POLL_INTERVAL, RETRY_INTERVAL, this);
+    }
+
+    public void start() {
+        feed.start();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public ProductSnapshot snapshot() {
+        return snapshot;
+    }
+
+    public Stats stats() {
+        ProductSnapshot current = snapshot;
+        return new Stats(
+            ready,
+            current.size(),
+            current.version() == null ? null : current.version().changeCount(),
+            changeBatches.sum(),
+            changedIds.sum(),
+            reloads.sum(),
+            reconciliationDifferences.sum()
+        );
+    }
+
+    @Override
+    public void resubscribed() {
+        reload(false);
+    }
+
+    /**
+     * Payloads are {@code <transaction id>:<ids or *>}, see
+     * {@code V8__log_product_changes_per_transaction.sql}.
+     */
+    @Override
+    public void notified(List<String> payloads) {
+        ProductRepository.CollectionVersion version = snapshot.version();
+        long changeCount = version == null ? 0 : version.changeCount();
+        boolean counted = false;
+        List<long[]> idLists = new ArrayList<>(payloads.size());
+        for (String payload : payloads) {
+            String[] parts = payload.split(":", 2);
+            long transaction = parts.length == 2 ? parseId(parts[0]) : -1;
+            long[] payloadIds = transaction < 0 || RELOAD_PAYLOAD.equals(parts[1]) ? null : parseIds(parts[1]);
+            if (payloadIds == null) {
+                reload(false);
+                return;
+            }
+            // a transaction's notifications are delivered together, in commit order
+            if (transaction != lastTransaction) {
+                lastTransaction = transaction;
+                if (!loadedTransactions.contains(transaction)) {
+                    changeCount++;
+                    counted = true;
+                }
+            }
+            idLists.add(payloadIds);
+        }
+        if (counted) {
+            // delivery happens after the commit, so this never claims an earlier modification
+            version = new ProductRepository.CollectionVersion(changeCount, OffsetDateTime.now(ZoneOffset.UTC));
+        }
+        long[] ids = idLists.stream()
+            .flatMapToLong(Arrays::stream)
+            .sorted()
+            .distinct()
+            .toArray();
+        // the rows read now may be even newer than the counted transactions, which only costs a
+        // client a full response, whereas the log's current count could claim commits whose
+        // notifications are still in flight and answer 304 for content the snapshot lacks
+        List<Product> rows = repository.findByIds(Arrays.stream(ids).boxed().toList(), ReadPreference.PRIMARY);
+        Map<Long, Product> current = new HashMap<>(rows.size() * 2);
+        for (Product row : rows) {
+            current.put(row.getId(), row);
+        }
+        snapshot = snapshot.withChanges(ids, current, version);
+        changeBatches.increment();
+        changedIds.add(ids.length);
+    }
+
+    @Override
+    public void idle() {
+        if (ready && System.nanoTime() - lastReloadNanos >= reconcileIntervalNanos) {
+            reload(true);
+        }
+    }
+
+    @Override
+    public void disconnected() {
+        ready = false;
+    }
+
+    private void reload(boolean reconciling) {
+        ProductRepository.CollectionSnapshot loaded = repository.findCollectionSnapshot();
+        ProductSnapshot reloaded = ProductSnapshot.of(loaded.products(), loaded.version());
+        if (reconciling) {
+            // notifications still queued behind this reload also count; they are applied next
+            int differences = reloaded.differencesFrom(snapshot);
+            if (differences > 0) {
+                reconciliationDifferences.add(differences);
+                LOGGER.info("Product index reconciliation replaced {} stale or missing products", differences);
+            }
+        }
+        snapshot = reloaded;
+        // notifications of these may still be queued; they are applied but not counted again. The
+        // log keeps a minute of commits, so this holds while the feed is less than a minute behind
+        loadedTransactions = loaded.loggedTransactions();
+        lastTransaction = -1;
+        lastReloadNanos = System.nanoTime();
+        reloads.increment();
+        if (!ready) {
+            ready = true;
+            LOGGER.info("Product index loaded with {} products", reloaded.size());
+        }
+    }
+
+    /**
+     * @return the id, or {@code -1} when {@code text} is not one
+     */
+    private static long parseId(String text) {
+        try {
+            long id = Long.parseLong(text);
+            return id < 0 ? -1 : id;
+        } catch (NumberFormatException exception) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the comma-separated ids, or {@code null} when {@code text} is malformed
+     */
+    private static long[] parseIds(String text) {
+        String[] parts = text.split(",");
+        long[] ids = new long[parts.length];
+        for (int index = 0; index < parts.length; index++) {
+            ids[index] = parseId(parts[index]);
+            if (ids[index] < 0) {
+                return null;
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public void close() {
+        ready = false;
+        feed.close();
+    }
+
+    /**
+     * Index counters; {@code changeCount} is the collection version the snapshot reflects.
+     */
+    public record Stats(
+        boolean ready,
+        int size,
+        Long changeCount,
+        long changeBatches,
+        long changedIds,
+        long reloads,
+        long reconciliationDifferences
+    ) {
+    }
+}
@@ -1,65 +1,652 @@
 package it.jaiki.service;
 
+import it.jaiki.cache.BoundedCache;
+import it.jaiki.cache.CacheStats;
+import it.jaiki.cache.ProductResponseCache;
+import it.jaiki.cache.RequestCoalescer;
+import it.jaiki.db.ReadPreference;
 import it.jaiki.model.Product;
+import it.jaiki.model.request.ProductBatchUpdateItem;
 import it.jaiki.model.request.ProductCreateRequest;
 import it.jaiki.model.request.ProductUpdateRequest;
+import it.jaiki.model.response.ProductBatchItemResult;
+import it.jaiki.model.response.ProductBatchItemResult.Status;
+import it.jaiki.model.response.ProductBatchResponse;
+import it.jaiki.model.response.ProductLookupResponse;
+import it.jaiki.model.response.ProductPageResponse;
 import it.jaiki.repository.ProductRepository;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
 
 /**
  * Encapsulates business rules around product manipulation.
  */
 public class ProductService {
 
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+    public static final int MAX_BATCH_ITEMS = 10_000;
+    public static final int MAX_LOOKUP_IDS = 500;
+    public static final int MAX_NAME_LENGTH = 100;
+
+    private static final String CURSOR_PREFIX = "id:";
+    private static final String SEARCH_CURSOR_PREFIX = "s:";
+    /** Substring matching relies on trigrams, which need at least three characters to use the index. */
+    private static final int MIN_CONTAINS_LENGTH = 3;
+
+    private static final int MAX_TRACKED_WRITES = 10_000;
+    private static final String WHOLE_COLLECTION = "all";
+
     private final ProductRepository repository;
+    private final BoundedCache<Long, Optional<Product>> cache;
+    /** Ids written within the replica or index lag window, read from the primary; null without either. */
+    private final BoundedCache<Long, Boolean> recentWrites;
+    /** In-memory copy of the table serving reads while it is ready; null when disabled. */
+    private final ProductIndex index;
+    /** Serialized response bodies, released on writes; null when responses are not cached. */
+    private final ProductResponseCache responses;
+    /** Group-commit queue for single-product updates; null to update in the request thread. */
+    private final ProductWriteQueue writes;
+    // identical concurrent database reads share one query; by-id reads are merged by the cache
+    private final RequestCoalescer<String, ProductRepository.CollectionVersion> versionReads = new RequestCoalescer<>("collection-version");
+    private final RequestCoalescer<String, List<Product>> collectionReads = new RequestCoalescer<>("collection");
+    private final RequestCoalescer<PageRead, List<Product>> pageReads = new RequestCoalescer<>("page");
+    private final RequestCoalescer<SearchRead, List<Product>> searchReads = new RequestCoalescer<>("search");
+
+    public ProductService(ProductRepository repository, BoundedCache<Long, Optional<Product>> cache) {
+        this(repository, cache, Duration.ZERO);
+    }
+
+    public ProductService(ProductRepository repository, BoundedCache<Long, Optional<Product>> cache,
+                          Duration readYourWritesWindow) {
+        this(repository, cache, readYourWritesWindow, null, null);
+    }
+
+    /**
+     * @param readYourWritesWindow how long after a write a product is read from the primary rather
+     *                             than the replica or the index; {@link Duration#ZERO} when there is
+     *                             neither
+     * @param index                serves catalog reads from memory while ready; {@code null} to always
+     *                             read through the cache and the database
+     * @param responses            serialized response bodies to release on writes, or {@code null}
+     */
+    public ProductService(ProductRepository repository, BoundedCache<Long, Optional<Product>> cache,
+                          Duration readYourWritesWindow, ProductIndex index, ProductResponseCache responses) {
+        this(repository, cache, readYourWritesWindow, index, responses, null);
+    }
 
-    public ProductService(ProductRepository repository) {
+    /**
+     * @param writes group-commits single-product updates with other callers'; {@code null} to run
+     *               each update in its own transaction
+     */
+    public ProductService(ProductRepository repository, BoundedCache<Long, Optional<Product>> cache,
+                          Duration readYourWritesWindow, ProductIndex index, ProductResponseCache responses,
+                          ProductWriteQueue writes) {
         this.repository = repository;
+        this.cache = cache;
+        this.index = index;
+        this.responses = responses;
+        this.writes = writes;
+        this.recentWrites = readYourWritesWindow.isZero() || readYourWritesWindow.isNegative()
+            ? null
+            : new BoundedCache<>("recent-writes", MAX_TRACKED_WRITES, written -> readYourWritesWindow);
     }
 
     public List<Product> listProducts() {
-        return repository.findAll();
+        if (index != null && index.isReady()) {
+            return index.snapshot().all();
+        }
+        return collectionReads.execute(WHOLE_COLLECTION, key -> repository.findAll());
+    }
+
+    public ProductPageResponse listProducts(String afterCursor, Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new ValidationException("Page limit must be between 1 and %d".formatted(MAX_PAGE_SIZE));
+        }
+        long afterId = afterCursor == null || afterCursor.isBlank() ? 0L : decodeCursor(afterCursor);
+
+        // fetch one extra row so we know whether another page exists without a COUNT query
+        List<Product> rows = index != null && index.isReady()
+            ? index.snapshot().page(afterId, pageSize + 1)
+            : pageReads.execute(new PageRead(afterId, pageSize + 1), read -> repository.findPage(read.afterId(), read.limit()));
+        if (rows.size() <= pageSize) {
+            return new ProductPageResponse(rows, null);
+        }
+        List<Product> page = rows.subList(0, pageSize);
+        return new ProductPageResponse(page, encodeCursor(page.get(pageSize - 1).getId()));
+    }
+
+    /**
+     * Validates and parses search parameters without touching the database, so callers can reject
+     * a bad request before answering it from a validator. {@code match} defaults to {@code prefix}
+     * and {@code sort} to {@code id}; the cursor is only valid for the same sort.
+     */
+    public SearchQuery parseSearch(String text, String match, String minPrice, String maxPrice,
+                                   String sort, String afterCursor, Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new ValidationException("Page limit must be between 1 and %d".formatted(MAX_PAGE_SIZE));
+        }
+        String query = text == null || text.isBlank() ? null : text.trim();
+        if (query != null && query.length() > MAX_NAME_LENGTH) {
+            throw new ValidationException("Search text must be at most %d characters long".formatted(MAX_NAME_LENGTH));
+        }
+        ProductRepository.SearchMatch searchMatch = parseOption(ProductRepository.SearchMatch.class, match, ProductRepository.SearchMatch.PREFIX, "match");
+        if (query != null && searchMatch == ProductRepository.SearchMatch.CONTAINS && query.length() < MIN_CONTAINS_LENGTH) {
+            throw new ValidationException("Substring search needs at least %d characters".formatted(MIN_CONTAINS_LENGTH));
+        }
+        BigDecimal min = parsePrice(minPrice, "minPrice");
+        BigDecimal max = parsePrice(maxPrice, "maxPrice");
+        if (min != null && max != null && min.compareTo(max) > 0) {
+            throw new ValidationException("minPrice must not be greater than maxPrice");
+        }
+        ProductRepository.SearchSort searchSort = parseOption(ProductRepository.SearchSort.class, sort, ProductRepository.SearchSort.ID, "sort");
+        ProductRepository.SearchPosition after = afterCursor == null || afterCursor.isBlank()
+            ? null
+            : decodeSearchCursor(afterCursor, searchSort);
+
+        return new SearchQuery(new ProductRepository.ProductSearch(query, searchMatch, min, max, searchSort), after, pageSize);
+    }
+
+    /**
+     * Searches products by name and price with keyset pagination.
+     */
+    public ProductPageResponse searchProducts(SearchQuery query) {
+        int pageSize = query.pageSize();
+        // fetch one extra row so we know whether another page exists without a COUNT query
+        List<Product> rows = searchReads.execute(
+            new SearchRead(query.search(), query.after(), pageSize + 1),
+            read -> repository.search(read.search(), read.after(), read.limit())
+        );
+        if (rows.size() <= pageSize) {
+            return new ProductPageResponse(rows, null);
+        }
+        List<Product> page = rows.subList(0, pageSize);
+        return new ProductPageResponse(page, encodeSearchCursor(page.get(pageSize - 1), query.search().sort()));
+    }
+
+    /**
+     * Streams the full catalog without materializing it. The caller owns the stream and must close it.
+     */
+    public Stream<Product> streamProducts() {
+        return repository.streamAll(ProductRepository.DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * The version of the collection that {@link #listProducts()} currently serves; with the index
+     * ready that is the snapshot's, so validators always match the content they are sent with.
+     */
+    public ProductRepository.CollectionVersion collectionVersion() {
+        if (index != null && index.isReady()) {
+            return index.snapshot().version();
+        }
+        return versionReads.execute(WHOLE_COLLECTION, key -> repository.findCollectionVersion());
     }
 
     public Optional<Product> findProduct(long id) {
-        return repository.findById(id);
+        if (index != null && index.isReady() && !recentlyWritten(id)) {
+            Product indexed = index.snapshot().find(id);
+            if (indexed != null) {
+                return Optional.of(indexed);
+            }
+            // a product created moments ago may not have reached the snapshot yet
+        }
+        return cache.get(id, this::loadProduct);
+    }
+
+    /**
+     * Loads several products by id for {@code GET /api/products?ids=}; see {@link #lookupProducts(List)}.
+     */
+    public ProductLookupResponse lookupProducts(String commaSeparatedIds) {
+        if (commaSeparatedIds == null || commaSeparatedIds.isBlank()) {
+            throw new ValidationException("At least one product id is required");
+        }
+        List<Long> ids = new ArrayList<>();
+        for (String part : commaSeparatedIds.split(",")) {
+            try {
+                ids.add(Long.parseLong(part.trim()));
+            } catch (NumberFormatException exception) {
+                throw new ValidationException("Invalid product id '%s'".formatted(part.trim()));
+            }
+        }
+        return lookupProducts(ids);
+    }
+
+    /**
+     * Loads several products by id, in request order and without duplicates, and reports the ids
+     * that do not exist. Products come from the index and the cache where possible; the rest are
+     * read with a single query and cached.
+     */
+    public ProductLookupResponse lookupProducts(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            throw new ValidationException("At least one product id is required");
+        }
+        if (ids.contains(null)) {
+            throw new ValidationException("Product ids must not be null");
+        }
+        Set<Long> requested = new LinkedHashSet<>(ids);
+        if (requested.size() > MAX_LOOKUP_IDS) {
+            throw new ValidationException("Lookup must not contain more than %d ids".formatted(MAX_LOOKUP_IDS));
+        }
+
+        Map<Long, Optional<Product>> found = new HashMap<>(requested.size() * 2);
+        List<Long> toLoad = new ArrayList<>();
+        boolean readPrimary = false;
+        for (long id : requested) {
+            boolean written = recentlyWritten(id);
+            Product indexed = index != null && index.isReady() && !written ? index.snapshot().find(id) : null;
+            Optional<Product> cached = indexed != null ? Optional.of(indexed) : cache.getIfPresent(id);
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                toLoad.add(id);
+                readPrimary |= written;
+            }
+        }
+        if (!toLoad.isEmpty()) {
+            Map<Long, Long> generations = new HashMap<>(toLoad.size() * 2);
+            for (long id : toLoad) {
+                generations.put(id, cache.generation(id));
+            }
+            Map<Long, Product> loaded = new HashMap<>(toLoad.size() * 2);
+            for (Product product : repository.findByIds(toLoad, readPrimary ? ReadPreference.PRIMARY : ReadPreference.REPLICA)) {
+                loaded.put(product.getId(), product);
+            }
+            for (long id : toLoad) {
+                // missing ids are cached as well, like single reads do
+                Optional<Product> product = Optional.ofNullable(loaded.get(id));
+                cache.putIfUnchanged(id, product, generations.get(id));
+                found.put(id, product);
+            }
+        }
+
+        List<Product> items = new ArrayList<>(requested.size());
+        List<Long> missing = new ArrayList<>();
+        for (long id : requested) {
+            Optional<Product> product = found.get(id);
+            if (product.isPresent()) {
+                items.add(product.get());
+            } else {
+                missing.add(id);
+            }
+        }
+        return new ProductLookupResponse(items, missing);
+    }
+
+    private Optional<Product> loadProduct(long id) {
+        return repository.findById(id, recentlyWritten(id) ? ReadPreference.PRIMARY : ReadPreference.REPLICA);
+    }
+
+    private boolean recentlyWritten(long id) {
+        return recentWrites != null && recentWrites.getIfPresent(id) != null;
+    }
+
+    public CacheStats cacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Counters of the merged collection, page and search reads; merged by-id reads are counted as
+     * {@code coalescedLoads} in {@link #cacheStats()}.
+     */
+    public List<RequestCoalescer.Stats> coalescingStats() {
+        return List.of(versionReads.stats(), collectionReads.stats(), pageReads.stats(), searchReads.stats());
+    }
+
+    public Optional<ProductIndex.Stats> indexStats() {
+        return Optional.ofNullable(index).map(ProductIndex::stats);
+    }
+
+    /**
+     * Drops every cached product; used after bulk loads that bypass this service.
+     */
+    public void invalidateCache() {
+        cache.invalidateAll();
+        invalidateReads();
+        if (responses != null) {
+            responses.invalidateAll();
+        }
     }
 
     public Product createProduct(ProductCreateRequest request) {
         validateName(request.getName());
         validatePrice(request.getPrice());
-        return repository.insert(request.getName().trim(), request.getPrice());
+        Product created = repository.insert(request.getName().trim(), request.getPrice());
+        // drops a cached 404 for this id, if any
+        invalidate(created.getId());
+        return created;
     }
 
-    public Optional<Product> updateProduct(long id, ProductUpdateRequest request) {
-        Optional<Product> existing = repository.findById(id);
-        if (existing.isEmpty()) {
-            return Optional.empty();
+    /**
+     * Applies a partial update in a single statement. With an {@code If-Match} precondition the
+     * update only succeeds if the product exists and, unless any version is accepted, still has one
+     * of the expected versions.
+     *
+     * @param ifMatch the {@code If-Match} precondition, or {@code null} when there is none
+     * @throws VersionConflictException if the precondition does not hold, including when the
+     *                                  product does not exist
+     */
+    public Optional<Product> updateProduct(long id, ProductUpdateRequest request, IfMatch ifMatch) {
+        // omitted fields keep the stored (already valid) value, so only supplied ones are checked
+        Optional<String> name = request.getName().map(String::trim);
+        if (name.isPresent()) {
+            validateName(name.get());
+        }
+        if (request.getPrice().isPresent()) {
+            validatePrice(request.getPrice().get());
         }
 
-        String name = request.getName().map(String::trim).orElse(existing.get().getName());
-        BigDecimal price = request.getPrice().orElse(existing.get().getPrice());
+        Long expectedVersion = expectedVersion(id, ifMatch);
+        Optional<Product> updated = writes == null
+            ? repository.update(id, name.orElse(null), request.getPrice().orElse(null), expectedVersion)
+            : awaitWrite(new ProductRepository.ProductUpdate(id, name.orElse(null), request.getPrice().orElse(null), expectedVersion));
+        invalidate(id);
+        if (updated.isEmpty() && ifMatch != null) {
+            throw conflict(id);
+        }
+        return updated;
+    }
+
+    /**
+     * The version the conditional write has to match: {@code null} without a precondition or when
+     * any version is accepted (the write then only has to find the row). With several candidate
+     * versions the current one is used if it is among them; the write still guards against races.
+     */
+    private Long expectedVersion(long id, IfMatch ifMatch) {
+        if (ifMatch == null || ifMatch.anyVersion()) {
+            return null;
+        }
+        if (ifMatch.versions().size() == 1) {
+            return ifMatch.versions().iterator().next();
+        }
+        Optional<Product> current = repository.findById(id, ReadPreference.PRIMARY);
+        if (current.isPresent() && ifMatch.versions().contains(current.get().getVersion())) {
+            return current.get().getVersion();
+        }
+        throw conflict(id);
+    }
+
+    /**
+     * Only the failure path pays for the extra read that reports the current version, if any.
+     */
+    private VersionConflictException conflict(long id) {
+        return repository.findById(id, ReadPreference.PRIMARY)
+            .map(VersionConflictException::new)
+            .orElseGet(() -> new VersionConflictException(id));
+    }
 
-        validateName(name);
-        validatePrice(price);
+    private Optional<Product> awaitWrite(ProductRepository.ProductUpdate update) {
+        try {
+            return writes.submit(update).join();
+        } catch (CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw exception;
+        }
+    }
 
-        return repository.update(id, name, price);
+    public Optional<ProductWriteQueue.Stats> writeQueueStats() {
+        return Optional.ofNullable(writes).map(ProductWriteQueue::stats);
     }
 
     public boolean deleteProduct(long id) {
-        return repository.delete(id);
+        return deleteProduct(id, null);
+    }
+
+    /**
+     * Deletes a product, subject to the same {@code If-Match} precondition as
+     * {@link #updateProduct}.
+     *
+     * @throws VersionConflictException if the precondition does not hold
+     */
+    public boolean deleteProduct(long id, IfMatch ifMatch) {
+        boolean deleted = repository.delete(id, expectedVersion(id, ifMatch));
+        invalidate(id);
+        if (!deleted && ifMatch != null) {
+            throw conflict(id);
+        }
+        return deleted;
+    }
+
+    /**
+     * Validates every item and inserts the valid ones in a single transaction.
+     */
+    public ProductBatchResponse createProducts(List<ProductCreateRequest> requests) {
+        validateBatchSize(requests);
+        ProductBatchItemResult[] results = new ProductBatchItemResult[requests.size()];
+        List<Integer> validIndexes = new ArrayList<>();
+        List<ProductRepository.NewProduct> products = new ArrayList<>();
+        for (int index = 0; index < requests.size(); index++) {
+            ProductCreateRequest request = requests.get(index);
+            try {
+                if (request == null) {
+                    throw new ValidationException("Product entry is required");
+                }
+                validateName(request.getName());
+                validatePrice(request.getPrice());
+                validIndexes.add(index);
+                products.add(new ProductRepository.NewProduct(request.getName().trim(), request.getPrice()));
+            } catch (ValidationException exception) {
+                results[index] = new ProductBatchItemResult(index, null, Status.INVALID, null, exception.getMessage());
+            }
+        }
+
+        if (!products.isEmpty()) {
+            List<Product> created = repository.insertAll(products);
+            for (int position = 0; position < created.size(); position++) {
+                Product product = created.get(position);
+                int index = validIndexes.get(position);
+                invalidate(product.getId());
+                results[index] = new ProductBatchItemResult(index, product.getId(), Status.CREATED, product, null);
+            }
+        }
+        return toBatchResponse(results);
+    }
+
+    /**
+     * Validates every item and applies the valid changes in a single transaction.
+     */
+    public ProductBatchResponse updateProducts(List<ProductBatchUpdateItem> items) {
+        validateBatchSize(items);
+        ProductBatchItemResult[] results = new ProductBatchItemResult[items.size()];
+        List<Integer> validIndexes = new ArrayList<>();
+        List<ProductRepository.ProductChange> changes = new ArrayList<>();
+        for (int index = 0; index < items.size(); index++) {
+            ProductBatchUpdateItem item = items.get(index);
+            try {
+                if (item == null) {
+                    throw new ValidationException("Product entry is required");
+                }
+                // omitted fields keep the stored (already valid) value, so only supplied ones are checked
+                Optional<String> name = item.getName().map(String::trim);
+                if (name.isPresent()) {
+                    validateName(name.get());
+                }
+                if (item.getPrice().isPresent()) {
+                    validatePrice(item.getPrice().get());
+                }
+                validIndexes.add(index);
+                changes.add(new ProductRepository.ProductChange(item.getId(), name.orElse(null), item.getPrice().orElse(null)));
+            } catch (ValidationException exception) {
+                Long id = item == null ? null : item.getId();
+                results[index] = new ProductBatchItemResult(index, id, Status.INVALID, null, exception.getMessage());
+            }
+        }
+
+        if (!changes.isEmpty()) {
+            Map<Long, Product> updated = repository.updateAll(changes);
+            for (int position = 0; position < changes.size(); position++) {
+                long id = changes.get(position).id();
+                int index = validIndexes.get(position);
+                invalidate(id);
+                Product product = updated.get(id);
+                results[index] = product == null
+                    ? new ProductBatchItemResult(index, id, Status.NOT_FOUND, null, "Product %d not found".formatted(id))
+                    : new ProductBatchItemResult(index, id, Status.UPDATED, product, null);
+            }
+        }
+        return toBatchResponse(results);
+    }
+
+    public ProductBatchResponse deleteProducts(List<Long> ids) {
+        validateBatchSize(ids);
+        if (ids.contains(null)) {
+            throw new ValidationException("Product ids must not be null");
+        }
+        Set<Long> deleted = repository.deleteAll(ids);
+        ProductBatchItemResult[] results = new ProductBatchItemResult[ids.size()];
+        for (int index = 0; index < ids.size(); index++) {
+            long id = ids.get(index);
+            invalidate(id);
+            results[index] = deleted.contains(id)
+                ? new ProductBatchItemResult(index, id, Status.DELETED, null, null)
+                : new ProductBatchItemResult(index, id, Status.NOT_FOUND, null, "Product %d not found".formatted(id));
+        }
+        return toBatchResponse(results);
+    }
+
+    /**
+     * Drops the cached entry after a write and, with a replica or the index, pins the id to the
+     * primary for the lag window so the writer (and everyone else) does not read or re-cache a
+     * stale copy.
+     */
+    private void invalidate(long id) {
+        if (recentWrites != null) {
+            recentWrites.put(id, Boolean.TRUE);
+        }
+        cache.invalidate(id);
+        invalidateReads();
+        if (responses != null) {
+            responses.invalidate(id);
+        }
+    }
+
+    /**
+     * Keeps readers that arrive after a write from joining a read that started before it.
+     */
+    private void invalidateReads() {
+        versionReads.invalidate();
+        collectionReads.invalidate();
+        pageReads.invalidate();
+        searchReads.invalidate();
+    }
+
+    private void validateBatchSize(List<?> items) {
+        if (items == null || items.isEmpty()) {
+            throw new ValidationException("Batch must contain at least one item");
+        }
+        if (items.size() > MAX_BATCH_ITEMS) {
+            throw new ValidationException("Batch must not contain more than %d items".formatted(MAX_BATCH_ITEMS));
+        }
+    }
+
+    private ProductBatchResponse toBatchResponse(ProductBatchItemResult[] results) {
+        int failed = 0;
+        for (ProductBatchItemResult result : results) {
+            if (result.getStatus() == Status.INVALID || result.getStatus() == Status.NOT_FOUND) {
+                failed++;
+            }
+        }
+        return new ProductBatchResponse(results.length - failed, failed, Arrays.asList(results));
+    }
+
+    private String encodeCursor(long id) {
+        byte[] raw = (CURSOR_PREFIX + id).getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
     }
 
-    private void validateName(String name) {
+    private long decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!raw.startsWith(CURSOR_PREFIX)) {
+                throw new ValidationException("Invalid page cursor");
+            }
+            return Long.parseLong(raw.substring(CURSOR_PREFIX.length()));
+        } catch (IllegalArgumentException exception) {
+            throw new ValidationException("Invalid page cursor");
+        }
+    }
+
+    /**
+     * Search cursors carry the sort they were issued for, the last id and, for name and price
+     * orders, the last sort key.
+     */
+    private String encodeSearchCursor(Product last, ProductRepository.SearchSort sort) {
+        String key = switch (sort) {
+            case ID -> "";
+            case NAME -> last.getName();
+            case PRICE, PRICE_DESC -> last.getPrice().toPlainString();
+        };
+        byte[] raw = (SEARCH_CURSOR_PREFIX + sort.name() + ":" + last.getId() + ":" + key).getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+    }
+
+    private ProductRepository.SearchPosition decodeSearchCursor(String cursor, ProductRepository.SearchSort sort) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":", 4);
+            if (parts.length != 4 || !SEARCH_CURSOR_PREFIX.equals(parts[0] + ":") || !sort.name().equals(parts[1])) {
+                throw new ValidationException("Invalid search cursor");
+            }
+            long id = Long.parseLong(parts[2]);
+            return switch (sort) {
+                case ID -> new ProductRepository.SearchPosition(id, null, null);
+                case NAME -> new ProductRepository.SearchPosition(id, parts[3], null);
+                case PRICE, PRICE_DESC -> new ProductRepository.SearchPosition(id, null, new BigDecimal(parts[3]));
+            };
+        } catch (IllegalArgumentException exception) {
+            throw new ValidationException("Invalid search cursor");
+        }
+    }
+
+    private static <E extends Enum<E>> E parseOption(Class<E> type, String value, E fallback, String parameter) {
+        if (value == null || value.isBlank()) {
+            return fallback;
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException exception) {
+            throw new ValidationException("Unsupported %s '%s'".formatted(parameter, value));
+        }
+    }
+
+    private static BigDecimal parsePrice(String value, String parameter) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value.trim());
+        } catch (NumberFormatException exception) {
+            throw new ValidationException("%s must be a decimal number".formatted(parameter));
+        }
+    }
+
+    static void validateName(String name) {
         if (name == null || name.isBlank()) {
             throw new ValidationException("Product name is required");
         }
+        if (name.length() > MAX_NAME_LENGTH) {
+            throw new ValidationException("Product name must be at most %d characters long".formatted(MAX_NAME_LENGTH));
+        }
     }
 
-    private void validatePrice(BigDecimal price) {
+    static void validatePrice(BigDecimal price) {
         if (price == null) {
             throw new ValidationException("Product price is required");
         }
@@ -69,6 +656,22 @@ public class ProductService {
         if (price.signum() < 0) {
             throw new ValidationException("Product price must be positive");
         }
+        // NUMERIC(12, 2) leaves ten digits before the decimal point
+        if (price.precision() - price.scale() > 10) {
+            throw new ValidationException("Product price is too large");
+        }
+    }
+
+    private record PageRead(long afterId, int limit) {
+    }
+
+    private record SearchRead(ProductRepository.ProductSearch search, ProductRepository.SearchPosition after, int limit) {
+    }
+
+    /**
+     * Search parameters accepted by {@link #parseSearch}.
+     */
+    public record SearchQuery(ProductRepository.ProductSearch search, ProductRepository.SearchPosition after, int pageSize) {
     }
 
     public static class ValidationException extends RuntimeException {
@@ -76,4 +679,32 @@ public class ProductService {
             super(message);
         }
     }
+
+    /**
+     * An {@code If-Match} precondition: the product must exist and, unless {@code anyVersion}, have
+     * one of {@code versions}. No versions and not {@code anyVersion} can never match.
+     */
+    public record IfMatch(boolean anyVersion, Set<Long> versions) {
+    }
+
+    public static class VersionConflictException extends RuntimeException {
+        private final transient Product current;
+
+        public VersionConflictException(Product current) {
+            super("Product %d was modified concurrently (current version %d)".formatted(current.getId(), current.getVersion()));
+            this.current = current;
+        }
+
+        public VersionConflictException(long id) {
+            super("Product %d does not exist".formatted(id));
+            this.current = null;
+        }
+
+        /**
+         * The stored product, or {@code null} when it does not exist.
+         */
+        public Product getCurrent() {
+            return current;
+        }
+    }
 }
@@ -0,0 +1,207 @@
+package it.jaiki.service;
+
+import it.jaiki.model.Product;
+import it.jaiki.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Group commit for single-product updates: callers enqueue an update and wait for its row, while
+ * one writer thread applies whatever has queued up in a single transaction.
+ *
+ * <p>The writer takes everything queued, then lingers up to {@code maxDelay} for more until
+ * {@code maxBatch} updates are pending, so under load many updates share one commit and its fsync.
+ * A caller's future completes only after its update is committed, so durability is the same as
+ * with one transaction per update. When a group fails (e.g. a database error caused by one of its
+ * updates), every update in it is retried in its own transaction, so one bad update cannot fail
+ * the others. A full queue rejects with {@link SaturatedException}.
+ */
+public final class ProductWriteQueue implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProductWriteQueue.class);
+
+    private final ProductRepository repository;
+    private final BlockingQueue<PendingUpdate> queue;
+    private final int queueCapacity;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final LongAdder groups = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public ProductWriteQueue(ProductRepository repository, int queueCapacity, int maxBatch, Duration maxDelay) {
+        if (queueCapacity < 1 || maxBatch < 1) {
+            throw new IllegalArgumentException("Write queue needs at least one slot and one update per group");
+        }
+        this.repository = repository;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.queueCapacity = queueCapacity;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.writer = new Thread(this::run, "product-writer");
+        this.writer.setDaemon(true);
+    }
+
+    public void start() {
+        writer.start();
+    }
+
+    /**
+     * Queues an update; the future completes with the updated row, or empty when the id does not
+     * exist or the version did not match, once the update is committed.
+     */
+    public CompletableFuture<Optional<Product>> submit(ProductRepository.ProductUpdate update) {
+        PendingUpdate pending = new PendingUpdate(update, new CompletableFuture<>());
+        if (!running || !queue.offer(pending)) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(new SaturatedException("Product updates are temporarily overloaded, retry shortly"));
+        }
+        return pending.result();
+    }
+
+    private void run() {
+        List<PendingUpdate> group = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingUpdate first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                queue.drainTo(group, maxBatch - group.size());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (group.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingUpdate next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                    queue.drainTo(group, maxBatch - group.size());
+                }
+            } catch (InterruptedException exception) {
+                // close() interrupts a lingering writer; flush what it holds and drain the rest
+                running = false;
+            }
+            if (!group.isEmpty()) {
+                apply(group);
+                group.clear();
+            }
+        }
+    }
+
+    private void apply(List<PendingUpdate> group) {
+        List<ProductRepository.ProductUpdate> changes = new ArrayList<>(group.size());
+        for (PendingUpdate pending : group) {
+            changes.add(pending.update());
+        }
+        List<Optional<Product>> results;
+        try {
+            results = repository.updateGroup(changes);
+        } catch (RuntimeException exception) {
+            applyOneByOne(group, exception);
+            return;
+        }
+        // count first, so a caller woken by its result already sees its group in the stats
+        groups.increment();
+        updates.add(group.size());
+        for (int index = 0; index < group.size(); index++) {
+            CompletableFuture<Optional<Product>> result = group.get(index).result();
+            // the group is committed, so a missing result is an error, never a reason to retry
+            if (index < results.size()) {
+                result.complete(results.get(index));
+            } else {
+                result.completeExceptionally(new IllegalStateException(
+                    "Group update returned %d results for %d updates".formatted(results.size(), group.size())));
+            }
+        }
+    }
+
+    private void applyOneByOne(List<PendingUpdate> group, RuntimeException groupFailure) {
+        if (group.size() == 1) {
+            group.get(0).result().completeExceptionally(groupFailure);
+            return;
+        }
+        fallbacks.increment();
+        LOGGER.warn("Group of {} product updates failed, applying them one by one: {}", group.size(), groupFailure.getMessage());
+        for (PendingUpdate pending : group) {
+            ProductRepository.ProductUpdate update = pending.update();
+            try {
+                pending.result().complete(repository.update(update.id(), update.name(), update.price(), update.expectedVersion()));
+            } catch (RuntimeException single) {
+                pending.result().completeExceptionally(single);
+            }
+        }
+    }
+
+    public Stats stats() {
+        long committedGroups = groups.sum();
+        long committedUpdates = updates.sum();
+        return new Stats(
+            queue.size(),
+            queueCapacity,
+            maxBatch,
+            committedGroups,
+            committedUpdates,
+            committedGroups == 0 ? 0.0 : (double) committedUpdates / committedGroups,
+            fallbacks.sum(),
+            rejected.sum()
+        );
+    }
+
+    /**
+     * Stops accepting updates and waits for the queued ones to be applied.
+     */
+    @Override
+    public void close() {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(5_000L);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        PendingUpdate abandoned;
+        while ((abandoned = queue.poll()) != null) {
+            abandoned.result().completeExceptionally(new SaturatedException("Product writer is shutting down"));
+        }
+    }
+
+    /**
+     * Snapshot of queue occupancy and grouping; {@code averageGroupSize} is updates per commit.
+     */
+    public record Stats(
+        int queueDepth,
+        int queueCapacity,
+        int maxGroupSize,
+        long groups,
+        long updates,
+        double averageGroupSize,
+        long fallbacks,
+        long rejected
+    ) {
+    }
+
+    public static class SaturatedException extends RuntimeException {
+        public SaturatedException(String message) {
+            super(message);
+        }
+    }
+
+    private record PendingUpdate(ProductRepository.ProductUpdate update, CompletableFuture<Optional<Product>> result) {
+    }
+}
@@ -0,0 +1,28 @@
+-- Single-row counter bumped by every statement that modifies products. It gives HTTP
+-- conditional GETs on the product collection a validator that costs one primary key lookup.
+CREATE TABLE IF NOT EXISTS products_change_counter (
+    id SMALLINT PRIMARY KEY CHECK (id = 1),
+    change_count BIGINT NOT NULL,
+    changed_at TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
+
+INSERT INTO products_change_counter (id, change_count, changed_at)
+VALUES (1, 0, NOW())
+ON CONFLICT (id) DO NOTHING;
+
+CREATE OR REPLACE FUNCTION bump_products_change_counter()
+RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE products_change_counter
+    SET change_count = change_count + 1,
+        changed_at = clock_timestamp()
+    WHERE id = 1;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_products_change_counter ON products;
+CREATE TRIGGER trg_products_change_counter
+AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON products
+FOR EACH STATEMENT
+EXECUTE FUNCTION bump_products_change_counter();
@@ -0,0 +1,17 @@
+-- Indexes behind GET /api/products/search; every filter and sort order is served by an index
+-- scan, and keyset pagination continues from the last (sort key, id) instead of an OFFSET.
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- full-text matching on the name; 'simple' avoids language-specific stemming of product names
+ALTER TABLE products ADD COLUMN IF NOT EXISTS search_vector TSVECTOR
+    GENERATED ALWAYS AS (to_tsvector('simple', name)) STORED;
+CREATE INDEX IF NOT EXISTS idx_products_search_vector ON products USING GIN (search_vector);
+
+-- case-insensitive substring matching (LIKE '%term%')
+CREATE INDEX IF NOT EXISTS idx_products_name_trgm ON products USING GIN (lower(name) gin_trgm_ops);
+
+-- case-insensitive prefix matching and name ordering; the "C" collation lets LIKE 'term%' use the btree
+CREATE INDEX IF NOT EXISTS idx_products_name_lower ON products ((lower(name) COLLATE "C"), id);
+
+-- price ranges and price ordering in both directions
+CREATE INDEX IF NOT EXISTS idx_products_price ON products (price, id);
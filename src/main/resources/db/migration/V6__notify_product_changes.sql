@@ -0,0 +1,58 @@
+-- Publishes the ids changed by each statement on the products_changed channel. Notifications are
+-- delivered on commit, so listeners only ever see committed changes. Statements touching more than
+-- 500 rows, and TRUNCATE, send '*' instead of a list so that listeners reload everything.
+CREATE OR REPLACE FUNCTION notify_products_changed()
+RETURNS TRIGGER AS $$
+DECLARE
+    changed_count BIGINT;
+    changed_ids TEXT;
+BEGIN
+    IF TG_OP = 'TRUNCATE' THEN
+        PERFORM pg_notify('products_changed', '*');
+        RETURN NULL;
+    END IF;
+
+    IF TG_OP = 'DELETE' THEN
+        SELECT count(*), string_agg(id::TEXT, ',') INTO changed_count, changed_ids
+        FROM (SELECT id FROM old_rows LIMIT 501) changed;
+    ELSE
+        SELECT count(*), string_agg(id::TEXT, ',') INTO changed_count, changed_ids
+        FROM (SELECT id FROM new_rows LIMIT 501) changed;
+    END IF;
+
+    IF changed_count > 500 THEN
+        PERFORM pg_notify('products_changed', '*');
+    ELSIF changed_count > 0 THEN
+        PERFORM pg_notify('products_changed', changed_ids);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- transition tables allow a single event per trigger, hence one trigger per operation
+DROP TRIGGER IF EXISTS trg_products_notify_insert ON products;
+CREATE TRIGGER trg_products_notify_insert
+AFTER INSERT ON products
+REFERENCING NEW TABLE AS new_rows
+FOR EACH STATEMENT
+EXECUTE FUNCTION notify_products_changed();
+
+DROP TRIGGER IF EXISTS trg_products_notify_update ON products;
+CREATE TRIGGER trg_products_notify_update
+AFTER UPDATE ON products
+REFERENCING NEW TABLE AS new_rows
+FOR EACH STATEMENT
+EXECUTE FUNCTION notify_products_changed();
+
+DROP TRIGGER IF EXISTS trg_products_notify_delete ON products;
+CREATE TRIGGER trg_products_notify_delete
+AFTER DELETE ON products
+REFERENCING OLD TABLE AS old_rows
+FOR EACH STATEMENT
+EXECUTE FUNCTION notify_products_changed();
+
+DROP TRIGGER IF EXISTS trg_products_notify_truncate ON products;
+CREATE TRIGGER trg_products_notify_truncate
+AFTER TRUNCATE ON products
+FOR EACH STATEMENT
+EXECUTE FUNCTION notify_products_changed();
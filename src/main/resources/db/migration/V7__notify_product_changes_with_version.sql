@@ -0,0 +1,43 @@
+-- Prefixes every products_changed payload with the collection version the change produced, as
+-- '<change_count>:<changed_at in epoch microseconds>:<ids or *>'. Listeners can then stamp their
+-- copy with the newest version whose rows they have actually applied, instead of reading the
+-- counter, which may already include commits whose notifications have not arrived yet.
+--
+-- Triggers on the same event fire in name order, so trg_products_change_counter has already
+-- bumped the counter for this statement when the notify triggers run; the row is locked by this
+-- transaction until commit, so versions are published in commit order.
+--
+-- Id lists are capped at 300 so that even 19-digit ids stay below the 8000 byte payload limit.
+CREATE OR REPLACE FUNCTION notify_products_changed()
+RETURNS TRIGGER AS $$
+DECLARE
+    changed_count BIGINT;
+    changed_ids TEXT;
+    version_prefix TEXT;
+BEGIN
+    SELECT change_count || ':' || floor(extract(EPOCH FROM changed_at) * 1000000)::BIGINT || ':'
+    INTO version_prefix
+    FROM products_change_counter
+    WHERE id = 1;
+
+    IF TG_OP = 'TRUNCATE' THEN
+        PERFORM pg_notify('products_changed', version_prefix || '*');
+        RETURN NULL;
+    END IF;
+
+    IF TG_OP = 'DELETE' THEN
+        SELECT count(*), string_agg(id::TEXT, ',') INTO changed_count, changed_ids
+        FROM (SELECT id FROM old_rows LIMIT 301) changed;
+    ELSE
+        SELECT count(*), string_agg(id::TEXT, ',') INTO changed_count, changed_ids
+        FROM (SELECT id FROM new_rows LIMIT 301) changed;
+    END IF;
+
+    IF changed_count > 300 THEN
+        PERFORM pg_notify('products_changed', version_prefix || '*');
+    ELSIF changed_count > 0 THEN
+        PERFORM pg_notify('products_changed', version_prefix || changed_ids);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
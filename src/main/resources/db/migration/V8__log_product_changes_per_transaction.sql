@@ -0,0 +1,96 @@
+-- Replaces the single-row change counter bump, whose row lock serialized every product write
+-- transaction until commit, with an append-only log holding one row per committed transaction
+-- that changed products. Writers only insert their own row, so they never wait on each other.
+--
+-- The collection version is products_change_counter.change_count (rows rolled up so far) plus the
+-- rows still in the log: the number of committed changing transactions, which only ever grows and
+-- is the same for every snapshot that sees the same commits.
+CREATE TABLE IF NOT EXISTS products_changes (
+    transaction_id XID8 PRIMARY KEY,
+    changed_at TIMESTAMPTZ NOT NULL DEFAULT clock_timestamp()
+);
+
+CREATE INDEX IF NOT EXISTS idx_products_changes_changed_at ON products_changes (changed_at);
+
+DROP TRIGGER IF EXISTS trg_products_change_counter ON products;
+DROP FUNCTION IF EXISTS bump_products_change_counter();
+
+-- Stamps the log row when its transaction commits, so changed_at follows commit order closely
+-- even for transactions that ran for a long time after their first change.
+CREATE OR REPLACE FUNCTION stamp_products_change()
+RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE products_changes SET changed_at = clock_timestamp() WHERE transaction_id = NEW.transaction_id;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_products_changes_stamp ON products_changes;
+CREATE CONSTRAINT TRIGGER trg_products_changes_stamp
+AFTER INSERT ON products_changes
+DEFERRABLE INITIALLY DEFERRED
+FOR EACH ROW
+EXECUTE FUNCTION stamp_products_change();
+
+-- Moves log rows older than a minute into the counter row. Only one transaction rolls up at a
+-- time and the others skip it instead of waiting. Rows committed within the last minute stay in
+-- the log, so a listener reloading its copy can tell which notifications it already contains.
+CREATE OR REPLACE FUNCTION roll_up_products_changes()
+RETURNS VOID AS $$
+BEGIN
+    PERFORM 1 FROM products_change_counter WHERE id = 1 FOR UPDATE SKIP LOCKED;
+    IF NOT FOUND THEN
+        RETURN;
+    END IF;
+
+    WITH rolled_up AS (
+        DELETE FROM products_changes
+        WHERE changed_at < clock_timestamp() - INTERVAL '1 minute'
+          AND transaction_id <> pg_current_xact_id()
+        RETURNING changed_at
+    )
+    UPDATE products_change_counter
+    SET change_count = change_count + (SELECT count(*) FROM rolled_up),
+        changed_at = greatest(changed_at, (SELECT max(changed_at) FROM rolled_up))
+    WHERE id = 1;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Payloads are now '<transaction id>:<ids or *>'. Every statement of a transaction carries the same
+-- transaction id, and notifications are delivered in commit order, so a listener counts one
+-- version per distinct transaction id. Statements that changed no rows neither log nor notify.
+CREATE OR REPLACE FUNCTION notify_products_changed()
+RETURNS TRIGGER AS $$
+DECLARE
+    changed_count BIGINT;
+    changed_ids TEXT;
+    logged BIGINT;
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        SELECT count(*), string_agg(id::TEXT, ',') INTO changed_count, changed_ids
+        FROM (SELECT id FROM old_rows LIMIT 301) changed;
+    ELSIF TG_OP <> 'TRUNCATE' THEN
+        SELECT count(*), string_agg(id::TEXT, ',') INTO changed_count, changed_ids
+        FROM (SELECT id FROM new_rows LIMIT 301) changed;
+    END IF;
+
+    IF TG_OP <> 'TRUNCATE' AND changed_count = 0 THEN
+        RETURN NULL;
+    END IF;
+
+    INSERT INTO products_changes (transaction_id) VALUES (pg_current_xact_id())
+    ON CONFLICT (transaction_id) DO NOTHING;
+    GET DIAGNOSTICS logged = ROW_COUNT;
+    -- roughly one changing transaction in 64 rolls the log up
+    IF logged > 0 AND pg_current_xact_id()::TEXT::BIGINT % 64 = 0 THEN
+        PERFORM roll_up_products_changes();
+    END IF;
+
+    IF TG_OP = 'TRUNCATE' OR changed_count > 300 THEN
+        PERFORM pg_notify('products_changed', pg_current_xact_id()::TEXT || ':*');
+    ELSE
+        PERFORM pg_notify('products_changed', pg_current_xact_id()::TEXT || ':' || changed_ids);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
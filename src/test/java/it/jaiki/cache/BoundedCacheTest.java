@@ -0,0 +1,157 @@
+package it.jaiki.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedCacheTest {
+
+    private static final Duration TTL = Duration.ofMinutes(1);
+
+    @Test
+    void evictsLeastRecentlyUsedEntryBeyondMaximumSize() {
+        BoundedCache<String, String> cache = new BoundedCache<>("test", 2, value -> TTL);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.getIfPresent("a");
+        cache.put("c", "C");
+
+        assertEquals("A", cache.getIfPresent("a"));
+        assertNull(cache.getIfPresent("b"));
+        assertEquals("C", cache.getIfPresent("c"));
+        assertEquals(1, cache.stats().evictions());
+        assertEquals(2, cache.stats().size());
+    }
+
+    @Test
+    void doesNotStoreValueLoadedAcrossInvalidation() {
+        BoundedCache<String, String> cache = new BoundedCache<>("test", 10, value -> TTL);
+
+        String loaded = cache.get("a", key -> {
+            cache.invalidate(key);
+            return "stale";
+        });
+
+        assertEquals("stale", loaded);
+        assertNull(cache.getIfPresent("a"));
+        assertEquals("fresh", cache.get("a", key -> "fresh"));
+        assertEquals("fresh", cache.getIfPresent("a"));
+    }
+
+    @Test
+    void putIfUnchangedSkipsValuesLoadedBeforeInvalidation() {
+        BoundedCache<String, String> cache = new BoundedCache<>("test", 10, value -> TTL);
+
+        long before = cache.generation("a");
+        cache.invalidate("a");
+        cache.putIfUnchanged("a", "stale", before);
+        assertNull(cache.getIfPresent("a"));
+
+        cache.putIfUnchanged("a", "fresh", cache.generation("a"));
+        assertEquals("fresh", cache.getIfPresent("a"));
+
+        before = cache.generation("a");
+        cache.invalidateAll();
+        cache.putIfUnchanged("a", "stale", before);
+        assertNull(cache.getIfPresent("a"));
+    }
+
+    @Test
+    void invalidatingOneKeyKeepsLoadsOfOthers() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>("test", 10, value -> TTL);
+        // keys 1 and 2 fall into different stripes
+        String loaded = cache.get(1, key -> {
+            cache.invalidate(2);
+            return "one";
+        });
+
+        assertEquals("one", loaded);
+        assertEquals("one", cache.getIfPresent(1));
+    }
+
+    @Test
+    void invalidationFromAnotherThreadDiscardsLoad() throws Exception {
+        BoundedCache<String, String> cache = new BoundedCache<>("test", 10, value -> TTL);
+        CountDownLatch loaded = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> load = executor.submit(() -> cache.get("a", key -> {
+                loaded.countDown();
+                await(release);
+                return "stale";
+            }));
+            assertTrue(loaded.await(5, TimeUnit.SECONDS));
+            // a write from another thread while the load is in progress
+            cache.invalidate("a");
+            release.countDown();
+
+            assertEquals("stale", load.get(5, TimeUnit.SECONDS));
+            assertNull(cache.getIfPresent("a"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void doesNotStoreValuesWithoutTtl() {
+        BoundedCache<String, String> cache = new BoundedCache<>("test", 10, value -> value.isEmpty() ? Duration.ZERO : TTL);
+        cache.put("a", "");
+        cache.put("b", "B");
+
+        assertNull(cache.getIfPresent("a"));
+        assertEquals("B", cache.getIfPresent("b"));
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        BoundedCache<String, String> cache = new BoundedCache<>("test", 10, value -> TTL);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> first = executor.submit(() -> cache.get("a", key -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return "A";
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<String> second = executor.submit(() -> cache.get("a", key -> {
+                loads.incrementAndGet();
+                return "other";
+            }));
+            while (cache.stats().coalescedLoads() == 0) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+
+            assertEquals("A", first.get(5, TimeUnit.SECONDS));
+            assertEquals("A", second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package it.jaiki.cache;
+
+import it.jaiki.model.Product;
+import it.jaiki.repository.ProductRepository.CollectionVersion;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ProductSnapshotTest {
+
+    private static final OffsetDateTime CHANGED_AT = OffsetDateTime.of(2024, 5, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    @Test
+    void rejectsUnsortedProducts() {
+        assertThrows(IllegalArgumentException.class,
+            () -> ProductSnapshot.of(List.of(product(2, 1), product(1, 1)), version(1)));
+    }
+
+    @Test
+    void findsProductsById() {
+        ProductSnapshot snapshot = ProductSnapshot.of(List.of(product(1, 1), product(5, 1)), version(1));
+
+        assertEquals(5, snapshot.find(5).getId());
+        assertNull(snapshot.find(3));
+    }
+
+    @Test
+    void pagesAfterAnIdThatNeedNotExist() {
+        ProductSnapshot snapshot = ProductSnapshot.of(List.of(product(1, 1), product(3, 1), product(5, 1), product(7, 1)), version(1));
+
+        assertEquals(List.of(3L, 5L), ids(snapshot.page(1, 2)));
+        assertEquals(List.of(5L, 7L), ids(snapshot.page(4, 10)));
+        assertEquals(List.of(), ids(snapshot.page(7, 10)));
+    }
+
+    @Test
+    void withChangesInsertsUpdatesAndDeletes() {
+        ProductSnapshot snapshot = ProductSnapshot.of(List.of(product(1, 1), product(3, 1), product(5, 1)), version(4));
+
+        ProductSnapshot changed = snapshot.withChanges(
+            new long[]{2, 3, 5, 9},
+            Map.of(2L, product(2, 1), 3L, product(3, 2), 9L, product(9, 1)),
+            version(8)
+        );
+
+        assertEquals(List.of(1L, 2L, 3L, 9L), ids(changed.all()));
+        assertEquals(2, changed.find(3).getVersion());
+        assertEquals(version(8), changed.version());
+        // the original snapshot is never modified
+        assertEquals(List.of(1L, 3L, 5L), ids(snapshot.all()));
+        assertEquals(1, snapshot.find(3).getVersion());
+        assertEquals(version(4), snapshot.version());
+    }
+
+    @Test
+    void withChangesKeepsUnchangedRows() {
+        Product unchanged = product(1, 1);
+        ProductSnapshot snapshot = ProductSnapshot.of(List.of(unchanged, product(3, 1)), version(1));
+
+        ProductSnapshot changed = snapshot.withChanges(new long[]{3}, Map.of(3L, product(3, 2)), version(2));
+
+        assertSame(unchanged, changed.find(1));
+        assertEquals(2, changed.size());
+    }
+
+    @Test
+    void countsDifferencesBetweenSnapshots() {
+        ProductSnapshot left = ProductSnapshot.of(List.of(product(1, 1), product(2, 1), product(3, 1)), version(1));
+        ProductSnapshot right = ProductSnapshot.of(List.of(product(1, 1), product(2, 2), product(4, 1)), version(2));
+
+        // 2 differs in version, 3 and 4 are each missing from one side
+        assertEquals(3, left.differencesFrom(right));
+        assertEquals(0, left.differencesFrom(left));
+    }
+
+    private static Product product(long id, long version) {
+        return new Product(id, "Product " + id, new BigDecimal("9.99"), CHANGED_AT, CHANGED_AT, version);
+    }
+
+    private static CollectionVersion version(long changeCount) {
+        return new CollectionVersion(changeCount, CHANGED_AT.plusSeconds(changeCount));
+    }
+
+    private static List<Long> ids(List<Product> products) {
+        return products.stream().map(Product::getId).toList();
+    }
+}
@@ -0,0 +1,109 @@
+package it.jaiki.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestCoalescerTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentCallersShareOneExecution() throws Exception {
+        RequestCoalescer<String, String> coalescer = new RequestCoalescer<>("test");
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+
+        Future<String> first = executor.submit(() -> coalescer.execute("key", key -> {
+            executions.incrementAndGet();
+            running.countDown();
+            await(release);
+            return "value";
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        Future<String> second = executor.submit(() -> coalescer.execute("key", key -> {
+            executions.incrementAndGet();
+            return "other";
+        }));
+        awaitCoalesced(coalescer, 1);
+        release.countDown();
+
+        assertEquals("value", first.get(5, TimeUnit.SECONDS));
+        assertEquals("value", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, executions.get());
+        assertEquals(new RequestCoalescer.Stats("test", 0, 2, 1, 1), coalescer.stats());
+    }
+
+    @Test
+    void callersAfterInvalidationStartANewExecution() throws Exception {
+        RequestCoalescer<String, String> coalescer = new RequestCoalescer<>("test");
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> stale = executor.submit(() -> coalescer.execute("key", key -> {
+            running.countDown();
+            await(release);
+            return "stale";
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        coalescer.invalidate();
+
+        assertEquals("fresh", coalescer.execute("key", key -> "fresh"));
+        release.countDown();
+        assertEquals("stale", stale.get(5, TimeUnit.SECONDS));
+        assertEquals(0, coalescer.stats().coalesced());
+    }
+
+    @Test
+    void sharesFailuresAndForgetsThem() throws Exception {
+        RequestCoalescer<String, String> coalescer = new RequestCoalescer<>("test");
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> first = executor.submit(() -> coalescer.execute("key", key -> {
+            running.countDown();
+            await(release);
+            throw new IllegalStateException("failed");
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        Future<String> second = executor.submit(() -> coalescer.execute("key", key -> "other"));
+        awaitCoalesced(coalescer, 1);
+        release.countDown();
+
+        assertTrue(assertThrows(Exception.class, () -> first.get(5, TimeUnit.SECONDS)).getCause() instanceof IllegalStateException);
+        assertTrue(assertThrows(Exception.class, () -> second.get(5, TimeUnit.SECONDS)).getCause() instanceof IllegalStateException);
+        // nothing is kept once the call finished
+        assertEquals("retried", coalescer.execute("key", key -> "retried"));
+    }
+
+    private static void awaitCoalesced(RequestCoalescer<?, ?> coalescer, long expected) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coalescer.stats().coalesced() < expected && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
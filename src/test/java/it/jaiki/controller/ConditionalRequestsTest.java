@@ -0,0 +1,125 @@
+package it.jaiki.controller;
+
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
+import it.jaiki.service.ProductService;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConditionalRequestsTest {
+
+    private static final OffsetDateTime LAST_MODIFIED = OffsetDateTime.of(2024, 5, 1, 12, 30, 15, 0, ZoneOffset.UTC);
+    private static final String ETAG = ConditionalRequests.productEtag(7, 3);
+
+    @Test
+    void answersNotModifiedWhenIfNoneMatchHoldsTheCurrentEtag() {
+        Context ctx = request(Header.IF_NONE_MATCH, "\"other\", " + ETAG);
+
+        assertTrue(ConditionalRequests.notModified(ctx, ETAG, LAST_MODIFIED));
+        verify(ctx).header(Header.ETAG, ETAG);
+        verify(ctx).header(Header.LAST_MODIFIED, "Wed, 1 May 2024 12:30:15 GMT");
+        verify(ctx).status(HttpStatus.NOT_MODIFIED);
+    }
+
+    @Test
+    void comparesIfNoneMatchWeakly() {
+        Context ctx = request(Header.IF_NONE_MATCH, "W/" + ETAG);
+
+        assertTrue(ConditionalRequests.notModified(ctx, ETAG, LAST_MODIFIED));
+    }
+
+    @Test
+    void answersNotModifiedForAnyCurrentRepresentation() {
+        String identity = ConditionalRequests.strongEtag("c42");
+        String gzip = ConditionalRequests.strongEtag("c42-gzip");
+        Context ctx = request(Header.IF_NONE_MATCH, gzip);
+
+        assertTrue(ConditionalRequests.notModified(ctx, identity, List.of(identity, gzip), LAST_MODIFIED));
+        verify(ctx).header(Header.ETAG, identity);
+    }
+
+    @Test
+    void sendsBodyWhenEtagChanged() {
+        Context ctx = request(Header.IF_NONE_MATCH, ConditionalRequests.productEtag(7, 2));
+
+        assertFalse(ConditionalRequests.notModified(ctx, ETAG, LAST_MODIFIED));
+        verify(ctx, never()).status(HttpStatus.NOT_MODIFIED);
+    }
+
+    @Test
+    void ifNoneMatchTakesPrecedenceOverIfModifiedSince() {
+        Context ctx = request(Header.IF_NONE_MATCH, "\"stale\"");
+        when(ctx.header(Header.IF_MODIFIED_SINCE)).thenReturn("Wed, 1 May 2024 12:30:15 GMT");
+
+        assertFalse(ConditionalRequests.notModified(ctx, ETAG, LAST_MODIFIED));
+    }
+
+    @Test
+    void answersNotModifiedWhenUnchangedSinceIfModifiedSince() {
+        Context ctx = request(Header.IF_MODIFIED_SINCE, "Wed, 1 May 2024 12:30:15 GMT");
+
+        // sub-second precision is not part of the comparison
+        assertTrue(ConditionalRequests.notModified(ctx, ETAG, LAST_MODIFIED.plusNanos(500_000_000)));
+    }
+
+    @Test
+    void sendsBodyWhenModifiedAfterIfModifiedSince() {
+        Context ctx = request(Header.IF_MODIFIED_SINCE, "Wed, 1 May 2024 12:30:14 GMT");
+
+        assertFalse(ConditionalRequests.notModified(ctx, ETAG, LAST_MODIFIED));
+    }
+
+    @Test
+    void ignoresMalformedIfModifiedSince() {
+        Context ctx = request(Header.IF_MODIFIED_SINCE, "yesterday");
+
+        assertFalse(ConditionalRequests.notModified(ctx, ETAG, LAST_MODIFIED));
+    }
+
+    @Test
+    void hasNoIfMatchPreconditionWithoutTheHeader() {
+        assertNull(ConditionalRequests.ifMatch(mock(Context.class), 7));
+    }
+
+    @Test
+    void ifMatchStarAcceptsAnyVersion() {
+        Context ctx = request(Header.IF_MATCH, "*");
+
+        assertEquals(new ProductService.IfMatch(true, Set.of()), ConditionalRequests.ifMatch(ctx, 7));
+    }
+
+    @Test
+    void ifMatchCollectsVersionsOfThisProduct() {
+        Context ctx = request(Header.IF_MATCH, ETAG + ", " + ConditionalRequests.productEtag(7, 5));
+
+        assertEquals(new ProductService.IfMatch(false, Set.of(3L, 5L)), ConditionalRequests.ifMatch(ctx, 7));
+    }
+
+    @Test
+    void ifMatchNeverMatchesWeakForeignOrMalformedTags() {
+        Context ctx = request(Header.IF_MATCH, "W/" + ETAG + ", " + ConditionalRequests.productEtag(8, 3) + ", \"7-vX\"");
+
+        // an empty set fails the precondition rather than dropping it
+        assertEquals(new ProductService.IfMatch(false, Set.of()), ConditionalRequests.ifMatch(ctx, 7));
+    }
+
+    private static Context request(String header, String value) {
+        Context ctx = mock(Context.class);
+        when(ctx.header(header)).thenReturn(value);
+        return ctx;
+    }
+}
@@ -0,0 +1,95 @@
+package it.jaiki.security;
+
+import io.javalin.http.Context;
+import io.javalin.http.ServiceUnavailableResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LoadShedderTest {
+
+    @Test
+    void shedsRequestsBeyondTheLimit() {
+        LoadShedder shedder = new LoadShedder(1, 2, 2.0);
+        shedder.admit(request(), "GET /fast");
+        shedder.admit(request(), "GET /fast");
+
+        assertThrows(ServiceUnavailableResponse.class, () -> shedder.admit(request(), "GET /fast"));
+        assertEquals(1, shedder.shed());
+        assertEquals(2, shedder.inFlight());
+    }
+
+    @Test
+    void keepsLimitForSteadyMixOfFastAndSlowRoutes() throws InterruptedException {
+        LoadShedder shedder = new LoadShedder(1, 100, 2.0);
+
+        for (int window = 0; window < 5; window++) {
+            serve(shedder, "GET /fast", 20, 0.5f);
+            serve(shedder, "POST /slow", 20, 250f);
+            Thread.sleep(110);
+        }
+
+        assertEquals(100, shedder.limit());
+    }
+
+    @Test
+    void shrinksLimitWhenRoutesSlowDown() throws InterruptedException {
+        LoadShedder shedder = new LoadShedder(1, 100, 2.0);
+        for (int window = 0; window < 3; window++) {
+            serve(shedder, "GET /fast", 20, 1f);
+            Thread.sleep(110);
+        }
+
+        for (int window = 0; window < 3; window++) {
+            serve(shedder, "GET /fast", 20, 10f);
+            Thread.sleep(110);
+        }
+        serve(shedder, "GET /fast", 1, 10f);
+
+        assertTrue(shedder.limit() < 100, "limit was " + shedder.limit());
+    }
+
+    @Test
+    void ignoresUnmeasuredAndSparseRequests() throws InterruptedException {
+        LoadShedder shedder = new LoadShedder(1, 100, 2.0);
+        serve(shedder, "GET /fast", 20, 1f);
+        Thread.sleep(110);
+
+        for (int window = 0; window < 3; window++) {
+            serve(shedder, null, 50, 5_000f);
+            // below the per-route minimum, so it keeps accumulating instead of deciding
+            serve(shedder, "GET /fast", 2, 50f);
+            Thread.sleep(110);
+        }
+        serve(shedder, null, 1, 5_000f);
+
+        assertEquals(100, shedder.limit());
+    }
+
+    private static void serve(LoadShedder shedder, String route, int requests, float latencyMs) {
+        for (int request = 0; request < requests; request++) {
+            Context ctx = request();
+            shedder.admit(ctx, route);
+            shedder.complete(ctx, latencyMs);
+        }
+    }
+
+    private static Context request() {
+        Map<String, Object> attributes = new HashMap<>();
+        Context ctx = mock(Context.class);
+        doAnswer(invocation -> attributes.put(invocation.getArgument(0), invocation.getArgument(1)))
+            .when(ctx).attribute(anyString(), any());
+        when(ctx.attribute(anyString())).thenAnswer(invocation -> attributes.get(invocation.<String>getArgument(0)));
+        return ctx;
+    }
+}
@@ -0,0 +1,105 @@
+package it.jaiki.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    @Test
+    void admitsBurstThenAsksToWait() {
+        RateLimiter.Budget budget = new RateLimiter.Budget("test", 1, 3);
+        RateLimiter limiter = limiter(budget);
+
+        for (int request = 0; request < 3; request++) {
+            assertEquals(0, limiter.tryAcquire(budget, "client"));
+        }
+        long wait = limiter.tryAcquire(budget, "client");
+
+        assertTrue(wait > 0 && wait <= TimeUnit.SECONDS.toNanos(1), "wait was " + wait);
+        assertEquals(1, budget.rejected());
+    }
+
+    @Test
+    void refillsAfterTheEmissionInterval() throws InterruptedException {
+        RateLimiter.Budget budget = new RateLimiter.Budget("test", 20, 1);
+        RateLimiter limiter = limiter(budget);
+
+        assertEquals(0, limiter.tryAcquire(budget, "client"));
+        long wait = limiter.tryAcquire(budget, "client");
+        assertTrue(wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(50), "wait was " + wait);
+
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(wait) + 5);
+        assertEquals(0, limiter.tryAcquire(budget, "client"));
+    }
+
+    @Test
+    void keepsSeparateBucketsPerClient() {
+        RateLimiter.Budget budget = new RateLimiter.Budget("test", 1, 1);
+        RateLimiter limiter = limiter(budget);
+
+        assertEquals(0, limiter.tryAcquire(budget, "first"));
+        assertEquals(0, limiter.tryAcquire(budget, "second"));
+        assertTrue(limiter.tryAcquire(budget, "first") > 0);
+        assertEquals(2, limiter.trackedClients());
+    }
+
+    @Test
+    void evictsFullBucketsToStayWithinClientLimit() {
+        RateLimiter.Budget idle = new RateLimiter.Budget("idle", 1_000_000, 1);
+        RateLimiter.Budget busy = new RateLimiter.Budget("busy", 1, 1);
+        RateLimiter limiter = new RateLimiter(idle, busy, busy, busy, 2);
+
+        // the busy bucket stays ahead of now for a second, the idle one is full again at once
+        assertEquals(0, limiter.tryAcquire(busy, "first"));
+        assertEquals(0, limiter.tryAcquire(idle, "second"));
+        busyWait(TimeUnit.MICROSECONDS.toNanos(10));
+        assertEquals(0, limiter.tryAcquire(busy, "third"));
+
+        assertEquals(2, limiter.trackedClients());
+        assertEquals(1, limiter.evictions());
+        // the busy client kept its state
+        assertTrue(limiter.tryAcquire(busy, "first") > 0);
+    }
+
+    @Test
+    void neverLimitsDisabledBudget() {
+        RateLimiter.Budget budget = new RateLimiter.Budget("test", 0, 1);
+        RateLimiter limiter = limiter(budget);
+
+        for (int request = 0; request < 1_000; request++) {
+            assertEquals(0, limiter.tryAcquire(budget, "client"));
+        }
+        assertEquals(0, limiter.trackedClients());
+    }
+
+    @Test
+    void picksBudgetFromRouteRoles() {
+        RateLimiter.Budget publicBudget = new RateLimiter.Budget("public", 1, 1);
+        RateLimiter.Budget userBudget = new RateLimiter.Budget("user", 1, 1);
+        RateLimiter.Budget adminBudget = new RateLimiter.Budget("admin", 1, 1);
+        RateLimiter.Budget authBudget = new RateLimiter.Budget("auth", 1, 1);
+        RateLimiter limiter = new RateLimiter(publicBudget, userBudget, adminBudget, authBudget, 100);
+
+        assertSame(publicBudget, limiter.budgetFor(Set.of(Role.PUBLIC), "/api/products"));
+        assertSame(authBudget, limiter.budgetFor(Set.of(Role.PUBLIC), "/api/auth/login"));
+        assertSame(userBudget, limiter.budgetFor(Set.of(Role.USER, Role.ADMIN), "/api/products/{id}"));
+        assertSame(adminBudget, limiter.budgetFor(Set.of(Role.ADMIN), "/api/admin/cache"));
+    }
+
+    private static void busyWait(long nanos) {
+        long until = System.nanoTime() + nanos;
+        while (System.nanoTime() - until < 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static RateLimiter limiter(RateLimiter.Budget budget) {
+        return new RateLimiter(budget, budget, budget, budget, 100);
+    }
+}
@@ -0,0 +1,97 @@
+package it.jaiki.service;
+
+import it.jaiki.db.ReadPreference;
+import it.jaiki.model.Product;
+import it.jaiki.repository.ProductRepository;
+import it.jaiki.repository.ProductRepository.CollectionVersion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductIndexTest {
+
+    private static final OffsetDateTime LOADED_AT = OffsetDateTime.of(2024, 5, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    private ProductRepository repository;
+    private ProductIndex index;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(ProductRepository.class);
+        // transaction 100 committed before the load, its notification is still queued
+        when(repository.findCollectionSnapshot()).thenReturn(new ProductRepository.CollectionSnapshot(
+            new CollectionVersion(5, LOADED_AT), Set.of(100L), List.of(product(1, 1), product(2, 1))));
+        // the feed is never started, the test drives the listener callbacks itself
+        index = new ProductIndex(repository, () -> {
+            throw new UnsupportedOperationException();
+        }, Duration.ofMinutes(5));
+        index.resubscribed();
+    }
+
+    @Test
+    void loadsWhenSubscribed() {
+        assertTrue(index.isReady());
+        assertEquals(2, index.snapshot().size());
+        assertEquals(5L, index.stats().changeCount());
+    }
+
+    @Test
+    void countsOneVersionPerNotifiedTransaction() {
+        when(repository.findByIds(List.of(1L, 2L, 3L), ReadPreference.PRIMARY))
+            .thenReturn(List.of(product(1, 2), product(3, 1)));
+
+        // transaction 101 ran two statements
+        index.notified(List.of("101:2,3", "101:1", "102:3"));
+
+        assertEquals(List.of(1L, 3L), index.snapshot().all().stream().map(Product::getId).toList());
+        assertEquals(2, index.snapshot().find(1).getVersion());
+        assertEquals(7L, index.stats().changeCount());
+        assertTrue(index.snapshot().version().changedAt().isAfter(LOADED_AT));
+    }
+
+    @Test
+    void doesNotCountTransactionsTheLoadContained() {
+        when(repository.findByIds(List.of(2L), ReadPreference.PRIMARY)).thenReturn(List.of(product(2, 2)));
+
+        index.notified(List.of("100:2"));
+
+        assertEquals(new CollectionVersion(5, LOADED_AT), index.snapshot().version());
+        assertEquals(2, index.snapshot().find(2).getVersion());
+    }
+
+    @Test
+    void reloadsWhenNotifiedWithoutIds() {
+        index.notified(List.of("101:1", "102:*"));
+
+        verify(repository, times(2)).findCollectionSnapshot();
+        assertEquals(2, index.stats().reloads());
+        assertEquals(0, index.stats().changeBatches());
+    }
+
+    @Test
+    void reloadsOnMalformedPayload() {
+        index.notified(List.of("5:12:1"));
+        index.notified(List.of("1"));
+
+        verify(repository, times(3)).findCollectionSnapshot();
+        assertFalse(index.stats().changeBatches() > 0);
+    }
+
+    private static Product product(long id, long version) {
+        return new Product(id, "Product " + id, new BigDecimal("9.99"), LOADED_AT, LOADED_AT, version);
+    }
+}
@@ -0,0 +1,107 @@
+package it.jaiki.service;
+
+import it.jaiki.cache.BoundedCache;
+import it.jaiki.db.ReadPreference;
+import it.jaiki.model.Product;
+import it.jaiki.model.request.ProductUpdateRequest;
+import it.jaiki.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductServiceTest {
+
+    private static final ProductUpdateRequest RENAME = new ProductUpdateRequest("Renamed", null);
+
+    private ProductRepository repository;
+    private ProductService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(ProductRepository.class);
+        service = new ProductService(repository, new BoundedCache<>("products", 10, product -> Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void updateWithoutPreconditionReportsMissingProductAsEmpty() {
+        when(repository.update(1L, "Renamed", null, null)).thenReturn(Optional.empty());
+
+        assertTrue(service.updateProduct(1L, RENAME, null).isEmpty());
+    }
+
+    @Test
+    void updateOfMissingProductFailsIfMatchStar() {
+        when(repository.update(1L, "Renamed", null, null)).thenReturn(Optional.empty());
+        when(repository.findById(1L, ReadPreference.PRIMARY)).thenReturn(Optional.empty());
+
+        ProductService.VersionConflictException conflict = assertThrows(ProductService.VersionConflictException.class,
+            () -> service.updateProduct(1L, RENAME, new ProductService.IfMatch(true, Set.of())));
+        assertNull(conflict.getCurrent());
+    }
+
+    @Test
+    void updateWithStaleVersionReportsCurrentProduct() {
+        Product current = product(1L, 4L);
+        when(repository.update(1L, "Renamed", null, 3L)).thenReturn(Optional.empty());
+        when(repository.findById(1L, ReadPreference.PRIMARY)).thenReturn(Optional.of(current));
+
+        ProductService.VersionConflictException conflict = assertThrows(ProductService.VersionConflictException.class,
+            () -> service.updateProduct(1L, RENAME, new ProductService.IfMatch(false, Set.of(3L))));
+        assertSame(current, conflict.getCurrent());
+    }
+
+    @Test
+    void updateWithoutMatchableTagsFailsBeforeWriting() {
+        when(repository.findById(1L, ReadPreference.PRIMARY)).thenReturn(Optional.of(product(1L, 4L)));
+
+        assertThrows(ProductService.VersionConflictException.class,
+            () -> service.updateProduct(1L, RENAME, new ProductService.IfMatch(false, Set.of())));
+        verify(repository, never()).update(1L, "Renamed", null, null);
+    }
+
+    @Test
+    void updateWithSeveralVersionsUsesTheCurrentOne() {
+        Product updated = product(1L, 5L);
+        when(repository.findById(1L, ReadPreference.PRIMARY)).thenReturn(Optional.of(product(1L, 4L)));
+        when(repository.update(1L, "Renamed", null, 4L)).thenReturn(Optional.of(updated));
+
+        assertEquals(Optional.of(updated), service.updateProduct(1L, RENAME, new ProductService.IfMatch(false, Set.of(2L, 4L))));
+    }
+
+    @Test
+    void deleteOfMissingProductFailsIfMatch() {
+        when(repository.delete(1L, 3L)).thenReturn(false);
+        when(repository.findById(1L, ReadPreference.PRIMARY)).thenReturn(Optional.empty());
+
+        assertThrows(ProductService.VersionConflictException.class,
+            () -> service.deleteProduct(1L, new ProductService.IfMatch(false, Set.of(3L))));
+    }
+
+    @Test
+    void deleteOfMissingProductWithoutPreconditionReturnsFalse() {
+        when(repository.delete(1L, null)).thenReturn(false);
+
+        assertFalse(service.deleteProduct(1L));
+    }
+
+    private static Product product(long id, long version) {
+        OffsetDateTime now = OffsetDateTime.now();
+        return new Product(id, "Product " + id, new BigDecimal("9.99"), now, now, version);
+    }
+}
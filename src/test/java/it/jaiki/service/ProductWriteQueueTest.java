@@ -0,0 +1,138 @@
+package it.jaiki.service;
+
+import it.jaiki.model.Product;
+import it.jaiki.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductWriteQueueTest {
+
+    private ProductRepository repository;
+    private ProductWriteQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(ProductRepository.class);
+        queue = new ProductWriteQueue(repository, 10, 3, Duration.ofSeconds(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        queue.close();
+    }
+
+    @Test
+    void commitsQueuedUpdatesAsOneGroup() throws Exception {
+        List<ProductRepository.ProductUpdate> updates = List.of(update(1), update(2), update(3));
+        when(repository.updateGroup(updates)).thenReturn(List.of(Optional.of(product(1)), Optional.empty(), Optional.of(product(3))));
+
+        // queued before the writer starts, so it takes all of them at once
+        List<CompletableFuture<Optional<Product>>> results = updates.stream().map(queue::submit).toList();
+        queue.start();
+
+        assertEquals(1, get(results.get(0)).orElseThrow().getId());
+        assertEquals(Optional.empty(), get(results.get(1)));
+        assertEquals(3, get(results.get(2)).orElseThrow().getId());
+        assertEquals(1, queue.stats().groups());
+        assertEquals(3, queue.stats().updates());
+        assertEquals(0, queue.stats().fallbacks());
+    }
+
+    @Test
+    void appliesUpdatesOneByOneAfterFailedGroup() throws Exception {
+        when(repository.updateGroup(anyList())).thenThrow(new IllegalStateException("group failed"));
+        when(repository.update(1, "Product 1", null, null)).thenReturn(Optional.of(product(1)));
+        when(repository.update(2, "Product 2", null, null)).thenThrow(new IllegalStateException("bad update"));
+        when(repository.update(3, "Product 3", null, null)).thenReturn(Optional.empty());
+
+        CompletableFuture<Optional<Product>> first = queue.submit(update(1));
+        CompletableFuture<Optional<Product>> second = queue.submit(update(2));
+        CompletableFuture<Optional<Product>> third = queue.submit(update(3));
+        queue.start();
+
+        // one bad update does not fail the others
+        assertEquals(1, get(first).orElseThrow().getId());
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> get(second));
+        assertEquals("bad update", failure.getCause().getMessage());
+        assertEquals(Optional.empty(), get(third));
+        assertEquals(1, queue.stats().fallbacks());
+        assertEquals(0, queue.stats().groups());
+    }
+
+    @Test
+    void neverRetriesCommittedGroup() {
+        List<ProductRepository.ProductUpdate> updates = List.of(update(1), update(2));
+        when(repository.updateGroup(updates)).thenReturn(List.of(Optional.of(product(1))));
+
+        CompletableFuture<Optional<Product>> first = queue.submit(updates.get(0));
+        CompletableFuture<Optional<Product>> second = queue.submit(updates.get(1));
+        queue.start();
+
+        assertEquals(Optional.of(1L), assertDoesNotThrow(() -> get(first)).map(Product::getId));
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> get(second));
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+        verify(repository, never()).update(2, "Product 2", null, null);
+        assertEquals(0, queue.stats().fallbacks());
+    }
+
+    @Test
+    void failsSingleUpdateGroupWithoutRetrying() {
+        when(repository.updateGroup(anyList())).thenThrow(new IllegalStateException("group failed"));
+
+        CompletableFuture<Optional<Product>> result = queue.submit(update(1));
+        queue.start();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> get(result));
+        assertEquals("group failed", failure.getCause().getMessage());
+        verify(repository, never()).update(1, "Product 1", null, null);
+        assertEquals(0, queue.stats().fallbacks());
+    }
+
+    @Test
+    void rejectsUpdatesWhenFull() {
+        ProductWriteQueue full = new ProductWriteQueue(repository, 1, 1, Duration.ZERO);
+        try {
+            full.submit(update(1));
+            CompletableFuture<Optional<Product>> rejected = full.submit(update(2));
+
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> get(rejected));
+            assertInstanceOf(ProductWriteQueue.SaturatedException.class, failure.getCause());
+            assertEquals(1, full.stats().rejected());
+        } finally {
+            full.close();
+        }
+    }
+
+    private static ProductRepository.ProductUpdate update(long id) {
+        return new ProductRepository.ProductUpdate(id, "Product " + id, null, null);
+    }
+
+    private static Product product(long id) {
+        OffsetDateTime now = OffsetDateTime.now();
+        return new Product(id, "Product " + id, new BigDecimal("9.99"), now, now, 2);
+    }
+
+    private static Optional<Product> get(CompletableFuture<Optional<Product>> future) throws Exception {
+        return future.get(5, TimeUnit.SECONDS);
+    }
+}